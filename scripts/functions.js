@@ -82,6 +82,24 @@ endpoint.deleteEvent = function (calendarId, eventId, options) {
     return response;
 };
 
+endpoint.batchCreateEvents = function (calendarId, events) {
+    var options = checkBatchOptions(calendarId, events);
+    return endpoint._batchCreateEvents(options);
+};
+
+endpoint.batchUpdateEvents = function (calendarId, events) {
+    var options = checkBatchOptions(calendarId, events);
+    return endpoint._batchUpdateEvents(options);
+};
+
+endpoint.batchDeleteEvents = function (calendarId, eventIds) {
+    var options = checkBatchOptions(calendarId, eventIds);
+    options.events = options.events.map(function (event) {
+        return isObject(event) ? event : {eventId: event};
+    });
+    return endpoint._batchDeleteEvents(options);
+};
+
 /////////////////////
 // Public API - Generic Functions
 /////////////////////
@@ -255,6 +273,23 @@ var checkHttpOptions = function (url, options) {
     return options;
 };
 
+var checkBatchOptions = function (calendarId, events) {
+    var options;
+    if (isObject(calendarId)) {
+        // take the 'calendarId' parameter as the options
+        options = calendarId;
+    } else if (Array.isArray(calendarId)) {
+        options = {events: calendarId};
+    } else {
+        options = {events: events || []};
+        if (!!calendarId) {
+            options.calendarId = calendarId;
+        }
+    }
+    options.events = options.events || [];
+    return options;
+};
+
 var checkOptions = function (id, options, idKey) {
     options = options || {};
     if (!!id) {
@@ -1,9 +1,9 @@
 package com.google.api.services.calendar;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.json.GenericJson;
-import com.google.api.client.json.jackson.JacksonFactory;
+import io.slingr.endpoints.googlecalendar.services.utils.GoogleTransport;
+import io.slingr.endpoints.googlecalendar.services.utils.RequestRateLimiter;
 import io.slingr.endpoints.utils.Json;
 
 import java.io.IOException;
@@ -16,10 +16,22 @@ import java.security.GeneralSecurityException;
 public class GenericGoogleCalendarService extends com.google.api.services.calendar.Calendar {
 
     public GenericGoogleCalendarService(String applicationName, String token) throws GeneralSecurityException, IOException {
+        this(applicationName, token, null, null);
+    }
+
+    /**
+     * @param applicationName application name
+     * @param token access token of the user
+     * @param userId user id, used to apply the rate limits of the user
+     * @param rateLimiter limits applied to every request, or null to send the requests without limits
+     */
+    public GenericGoogleCalendarService(String applicationName, String token, String userId, RequestRateLimiter rateLimiter) throws GeneralSecurityException, IOException {
         super(new Builder(
-                GoogleNetHttpTransport.newTrustedTransport(),
-                new JacksonFactory(),
-                new GoogleCredential().setAccessToken(token)
+                GoogleTransport.getHttpTransport(),
+                GoogleTransport.getJsonFactory(),
+                rateLimiter != null ?
+                        rateLimiter.wrap(userId, new GoogleCredential().setAccessToken(token)) :
+                        new GoogleCredential().setAccessToken(token)
         ).setApplicationName(applicationName));
     }
 
@@ -4,17 +4,32 @@ import com.google.api.client.http.HttpResponseException;
 import io.slingr.endpoints.PerUserEndpoint;
 import io.slingr.endpoints.exceptions.EndpointException;
 import io.slingr.endpoints.exceptions.ErrorCode;
+import io.slingr.endpoints.exceptions.PermanentException;
 import io.slingr.endpoints.framework.annotations.*;
 import io.slingr.endpoints.googlecalendar.services.*;
+import io.slingr.endpoints.googlecalendar.services.entities.PushChannel;
 import io.slingr.endpoints.googlecalendar.services.entities.ValidToken;
+import io.slingr.endpoints.googlecalendar.services.utils.Deadline;
+import io.slingr.endpoints.googlecalendar.services.utils.RequestRateLimiter;
+import io.slingr.endpoints.googlecalendar.services.utils.RequestRetryPolicy;
+import io.slingr.endpoints.googlecalendar.services.utils.UserCircuitBreakers;
+import io.slingr.endpoints.googlecalendar.sync.CalendarsSyncState;
+import io.slingr.endpoints.googlecalendar.sync.DeliveryPipeline;
+import io.slingr.endpoints.googlecalendar.sync.EventBatcher;
+import io.slingr.endpoints.googlecalendar.sync.EventCoalescer;
+import io.slingr.endpoints.googlecalendar.sync.PollingReplicas;
+import io.slingr.endpoints.googlecalendar.sync.PushChannelManager;
+import io.slingr.endpoints.googlecalendar.sync.SyncProgress;
+import io.slingr.endpoints.googlecalendar.sync.UserIdIterator;
+import io.slingr.endpoints.googlecalendar.sync.UserSyncLocks;
 import io.slingr.endpoints.services.AppLogs;
 import io.slingr.endpoints.services.datastores.DataStore;
-import io.slingr.endpoints.services.datastores.DataStoreResponse;
 import io.slingr.endpoints.services.exchange.Parameter;
 import io.slingr.endpoints.services.exchange.ReservedName;
 import io.slingr.endpoints.utils.Json;
 import io.slingr.endpoints.utils.MapsUtils;
 import io.slingr.endpoints.ws.exchange.FunctionRequest;
+import io.slingr.endpoints.ws.exchange.WebServiceRequest;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,10 +37,20 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * <p>Google Calendar endpoint
@@ -42,13 +67,15 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
     private static final long DEFAULT_POLLING_TIME = TimeUnit.MINUTES.toMillis(10);
     private static final long DEFAULT_STARTING_TIME = TimeUnit.SECONDS.toMillis(5);
     private static final long MAX_WAITING_BETWEEN_SYNCS = TimeUnit.DAYS.toMillis(15);
+    private static final int DEFAULT_SYNC_THREADS = 4;
+    private static final int DEFAULT_CALENDAR_SYNC_THREADS = 4;
+    private static final long DEFAULT_MAX_CALENDAR_SYNC_INTERVAL = TimeUnit.MINUTES.toMillis(60);
+    private static final long DEFAULT_FUNCTION_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    private static final long TOKEN_REVALIDATION_INTERVAL = TimeUnit.MINUTES.toMillis(1);
 
     // method parameters
     private static final String PARAMETER_CALENDAR_ID = "contactId";
     private static final String PARAMETER_EVENT_ID = "eventId";
-    private static final String PARAMETER_ID = "_id";
-    private static final String PARAMETER_LAST_SYNC = "last_sync";
-    private static final String PARAMETER_CALENDARS = "calendars";
     private static final String PARAMETER_STATUS = "status";
     private static final String PARAMETER_STATUS_CANCELLED = "cancelled";
     private static final String OLD_FUNCTION_NAME = "__functionName";
@@ -84,6 +111,20 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
     private static final String TAG_USER_ID = "user_id";
     private static final String TAG_EVENTS_TOTAL = "total_events";
     private static final String TAG_EVENT = "event";
+    private static final String TAG_PROGRESS = "progress";
+    private static final String TAG_PUSH = "push";
+    private static final String TAG_PAGES = "pages";
+    private static final String TAG_CALENDAR_CHANGES = "calendar_changes";
+    private static final String TAG_QUEUE = "queue";
+    private static final String TAG_PAGE_TOKEN = "page_token";
+
+    // push notifications
+    private static final String HEADER_CHANNEL_ID = "X-Goog-Channel-ID";
+    private static final String HEADER_CHANNEL_TOKEN = "X-Goog-Channel-Token";
+    private static final String HEADER_RESOURCE_STATE = "X-Goog-Resource-State";
+    private static final int MAX_PUSH_ATTEMPTS = 3;
+    private static final long PUSH_RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final int PUSH_USER_COUNTER = -1;
 
     // old methods
     private static final String OLD_METHOD_GET_CALENDARS = "getCalendars";
@@ -100,6 +141,7 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
     // event names
     private static final String SYNC_EVENT_DELETED = "syncEventDeleted";
     private static final String SYNC_EVENT_UPDATED = "syncEventUpdated";
+    private static final String SYNC_EVENTS_BATCH = "syncEventsBatch";
 
     @ApplicationLogger
     private AppLogs appLogs;
@@ -107,6 +149,12 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
     @EndpointDataStore(name = "cal_sync")
     private DataStore pollingDataStore;
 
+    @EndpointDataStore(name = "push_channels")
+    private DataStore pushChannelsDataStore;
+
+    @EndpointDataStore(name = "polling_replicas")
+    private DataStore pollingReplicasDataStore;
+
     @EndpointUserDataStore
     private DataStore usersDataStore;
 
@@ -133,11 +181,98 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
     @EndpointProperty
     private String pollingEnabled;
 
+    @EndpointProperty
+    private String syncThreads;
+
+    @EndpointProperty
+    private String calendarSyncThreads;
+
+    @EndpointProperty
+    private String maxCalendarSyncInterval;
+
+    @EndpointProperty
+    private String syncEventFields;
+
+    @EndpointProperty
+    private String syncSenderThreads;
+
+    @EndpointProperty
+    private String syncQueueSize;
+
+    @EndpointProperty
+    private String syncEventsDelivery;
+
+    @EndpointProperty
+    private String syncBatchSize;
+
+    @EndpointProperty
+    private String syncBatchWindow;
+
+    @EndpointProperty
+    private String defaultEventFields;
+
+    @EndpointProperty
+    private String pushEnabled;
+
+    @EndpointProperty
+    private String pushWebhookUrl;
+
+    @EndpointProperty
+    private String userRateLimit;
+
+    @EndpointProperty
+    private String projectRateLimit;
+
+    @EndpointProperty
+    private String rateLimitMaxWait;
+
+    @EndpointProperty
+    private String maxRequestRetries;
+
+    @EndpointProperty
+    private String functionTimeout;
+
+    @EndpointProperty
+    private String circuitBreakerFailures;
+
+    @EndpointProperty
+    private String circuitBreakerOpenTime;
+
+    @EndpointProperty
+    private String servicesCacheSize;
+
+    @EndpointProperty
+    private String servicesCacheTtl;
+
+    @EndpointProperty
+    private String tokenRefreshMargin;
+
+    @EndpointProperty
+    private String tokenRefreshThreads;
+
     @EndpointConfiguration
     private Json configuration;
 
     private GoogleClient client = null;
-    private final ReentrantLock userSyncLock = new ReentrantLock();
+    private UserCircuitBreakers circuitBreakers = null;
+    private long functionTimeoutMillis = DEFAULT_FUNCTION_TIMEOUT;
+    private ExecutorService syncWorkers = null;
+    private int syncWorkersCount = DEFAULT_SYNC_THREADS;
+    private ExecutorService calendarWorkers = null;
+    private int calendarsPerUser = DEFAULT_CALENDAR_SYNC_THREADS;
+    private long pollingInterval = DEFAULT_POLLING_TIME;
+    private long maxCalendarInterval = DEFAULT_MAX_CALENDAR_SYNC_INTERVAL;
+    private EventBatcher eventBatcher = null;
+    private DeliveryPipeline deliveryPipeline = null;
+    private PollingReplicas pollingReplicas = null;
+    private ScheduledExecutorService pollingTimer = null;
+    private final UserSyncLocks userSyncLocks = new UserSyncLocks();
+    private PushChannelManager pushChannels = null;
+    private ScheduledExecutorService pushRetries = null;
+    private final AtomicLong pushCounter = new AtomicLong(0);
+    private final Map<String, ValidToken> userTokens = new ConcurrentHashMap<>();
+    private final Map<String, Long> userTokenChecks = new ConcurrentHashMap<>();
+    private TokenRefreshScheduler tokenRefreshScheduler = null;
     private final AtomicLong pollingCounter = new AtomicLong(0);
 
     @Override
@@ -149,7 +284,35 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         )+properties().getBaseDomain()+"/callback";
 
         // google client
-        client = new GoogleClient(properties().getApplicationName(), clientId, clientSecret, redirectUri, ServiceType.values());
+        final long cacheSize = parseProperty(this.servicesCacheSize, GoogleClient.DEFAULT_SERVICES_CACHE_SIZE, "clients cache size");
+        final long cacheTtl = parseMinutesProperty(this.servicesCacheTtl, GoogleClient.DEFAULT_SERVICES_CACHE_TTL, "clients cache time");
+        // requests to Google are limited per user and for the whole project
+        final long userRate = parseProperty(this.userRateLimit, RequestRateLimiter.DEFAULT_USER_RATE, "user rate limit");
+        final long projectRate = parseProperty(this.projectRateLimit, RequestRateLimiter.DEFAULT_PROJECT_RATE, "project rate limit");
+        final long maxWait = parseProperty(this.rateLimitMaxWait, -1, "rate limit max wait");
+        final RequestRateLimiter rateLimiter = new RequestRateLimiter(userRate, projectRate, maxWait > 0 ? TimeUnit.SECONDS.toMillis(maxWait) : RequestRateLimiter.DEFAULT_MAX_WAIT);
+        logger.info(String.format("Google API requests limited to [%s] per second per user and [%s] per second per project", userRate, projectRate));
+
+        // requests rejected by the rate limits or by temporary errors are retried
+        final long maxRetries = parseProperty(this.maxRequestRetries, RequestRetryPolicy.DEFAULT_MAX_RETRIES, "max request retries");
+
+        // functions stop sending requests to Google once their time is over
+        final long timeout = parseProperty(this.functionTimeout, -1, "function timeout");
+        functionTimeoutMillis = timeout > 0 ? TimeUnit.SECONDS.toMillis(timeout) : DEFAULT_FUNCTION_TIMEOUT;
+
+        // users with repeated failures fail fast until a probe request works
+        final long breakerFailures = parseProperty(this.circuitBreakerFailures, UserCircuitBreakers.DEFAULT_FAILURE_THRESHOLD, "circuit breaker failures");
+        final long breakerOpenTime = parseProperty(this.circuitBreakerOpenTime, -1, "circuit breaker open time");
+        circuitBreakers = new UserCircuitBreakers((int) breakerFailures, breakerOpenTime > 0 ? TimeUnit.SECONDS.toMillis(breakerOpenTime) : UserCircuitBreakers.DEFAULT_OPEN_TIME);
+
+        final RequestRetryPolicy retryPolicy = new RequestRetryPolicy(rateLimiter, circuitBreakers, (int) maxRetries);
+        client = new GoogleClient(properties().getApplicationName(), clientId, clientSecret, redirectUri, (int) Math.max(1, cacheSize), cacheTtl, rateLimiter, retryPolicy, ServiceType.values());
+
+        // background token renewal
+        final long refreshMargin = parseMinutesProperty(this.tokenRefreshMargin, TokenRefreshScheduler.DEFAULT_MARGIN, "token renewal margin");
+        final long refreshThreads = parseProperty(this.tokenRefreshThreads, TokenRefreshScheduler.DEFAULT_CONCURRENCY, "token renewal workers");
+        tokenRefreshScheduler = new TokenRefreshScheduler(refreshMargin, (int) refreshThreads, this::refreshUserTokenInBackground);
+        tokenRefreshScheduler.start();
 
         // polling
         if ("enable".equals(this.pollingEnabled)) {
@@ -164,15 +327,92 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
             if(syncTime < MIN_POLLING_TIME){
                 syncTime = MIN_POLLING_TIME;
             }
+            pollingInterval = syncTime;
+
+            // calendars without changes are synchronized less often, up to this interval
+            maxCalendarInterval = Math.max(syncTime, parseMinutesProperty(this.maxCalendarSyncInterval, DEFAULT_MAX_CALENDAR_SYNC_INTERVAL, "max calendar sync interval"));
 
-            Executors.newSingleThreadScheduledExecutor().scheduleWithFixedDelay(this::pollingProcess, DEFAULT_STARTING_TIME, syncTime, TimeUnit.MILLISECONDS);
+            final long threads = parseProperty(this.syncThreads, DEFAULT_SYNC_THREADS, "sync workers");
+            syncWorkersCount = (int) threads;
+            syncWorkers = Executors.newFixedThreadPool(syncWorkersCount);
 
-            logger.info(String.format("Calendars polling enabled each [%s] ms", syncTime));
+            // calendars of a user are synchronized in parallel, limited per user so the pool is shared fairly
+            calendarsPerUser = (int) parseProperty(this.calendarSyncThreads, DEFAULT_CALENDAR_SYNC_THREADS, "calendar sync workers");
+            if (calendarsPerUser > 1) {
+                calendarWorkers = Executors.newFixedThreadPool((int) threads * calendarsPerUser);
+            }
+
+            // users are divided between the replicas of the endpoint
+            pollingReplicas = new PollingReplicas(pollingReplicasDataStore, PollingReplicas.DEFAULT_RENEWAL_INTERVAL);
+            pollingReplicas.start();
+
+            pollingTimer = Executors.newSingleThreadScheduledExecutor();
+            pollingTimer.scheduleWithFixedDelay(this::pollingProcess, DEFAULT_STARTING_TIME, syncTime, TimeUnit.MILLISECONDS);
+
+            logger.info(String.format("Calendars polling enabled each [%s] ms (up to [%s] ms for calendars without changes) with [%s] workers and [%s] calendar workers per user",
+                    syncTime, maxCalendarInterval, threads, calendarsPerUser));
+
+            // changes are fetched and delivered by different workers
+            final long senders = parseProperty(this.syncSenderThreads, DeliveryPipeline.DEFAULT_SENDERS, "sync senders");
+            final long queueSize = parseProperty(this.syncQueueSize, DeliveryPipeline.DEFAULT_CAPACITY, "sync queue size");
+            deliveryPipeline = new DeliveryPipeline((int) senders, (int) queueSize);
+
+            // changes can be sent in batches
+            if ("batch".equals(this.syncEventsDelivery)) {
+                final long batchSize = parseProperty(this.syncBatchSize, EventBatcher.DEFAULT_MAX_SIZE, "sync batch size");
+                final long batchWindow = parseProperty(this.syncBatchWindow, -1, "sync batch window");
+                eventBatcher = new EventBatcher((int) batchSize, batchWindow > 0 ? TimeUnit.SECONDS.toMillis(batchWindow) : EventBatcher.DEFAULT_WINDOW, this::sendEventsBatch);
+                eventBatcher.start();
+            }
+
+            // push notifications
+            if ("enable".equals(this.pushEnabled)) {
+                if (StringUtils.isNotBlank(this.pushWebhookUrl)) {
+                    pushChannels = new PushChannelManager(pushChannelsDataStore, this.pushWebhookUrl);
+                    pushRetries = Executors.newSingleThreadScheduledExecutor();
+                    logger.info(String.format("Push notifications enabled on [%s]", this.pushWebhookUrl));
+                } else {
+                    logger.warn("Push notifications can not be enabled without webhook URL");
+                }
+            }
         } else {
             logger.info("Calendars polling disabled");
         }
     }
 
+    @Override
+    public void endpointStopped(String cause) {
+        logger.info(String.format("Endpoint stopped [%s]", cause));
+
+        // no new syncs are started, and the running ones are interrupted
+        if (pollingTimer != null) {
+            pollingTimer.shutdownNow();
+        }
+        if (pushRetries != null) {
+            pushRetries.shutdownNow();
+        }
+        if (syncWorkers != null) {
+            syncWorkers.shutdownNow();
+        }
+        if (calendarWorkers != null) {
+            calendarWorkers.shutdownNow();
+        }
+        if (deliveryPipeline != null) {
+            deliveryPipeline.stop();
+        }
+        if (eventBatcher != null) {
+            // the pending changes are sent before the endpoint stops
+            eventBatcher.stop();
+        }
+        if (tokenRefreshScheduler != null) {
+            tokenRefreshScheduler.stop();
+        }
+        if (pollingReplicas != null) {
+            // the lease is released at the end, so the other replicas take the users once the syncs stopped
+            pollingReplicas.stop();
+        }
+    }
+
     @EndpointFunction(name = ReservedName.CONNECT_USER)
     public Json connectUsers(FunctionRequest request) {
         final String userId = request.getUserId();
@@ -280,6 +520,9 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         configuration.set("_id", userId);
         final Json conf = usersDataStore.save(configuration);
         if(connected) {
+            cacheUserToken(userId, new ValidToken(configuration.string(PROPERTY_TOKEN), configuration.string(PROPERTY_REFRESH_TOKEN), configuration.string(PROPERTY_EXPIRATION_TIME)));
+            circuitBreakers.reset(userId);
+
             final Json event = Json.map()
                     .setIfNotNull("userId", userId)
                     .setIfNotNull("userEmail", request.getUserEmail());
@@ -339,6 +582,17 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         configuration.set(PROPERTY_TIMEZONE, null);
 
         if(StringUtils.isNotBlank(userId)) {
+            // stop the push notifications of the user while the token is still valid
+            if (pushChannels != null) {
+                final ValidToken token = userTokens.get(userId);
+                pushChannels.removeUserChannels(userId, token != null && !token.isExpired() ? client.getService(userId, token.getToken(), this) : null);
+            }
+
+            // discard the token and clients cached for the user
+            removeUserToken(userId);
+            client.invalidateServices(userId);
+            circuitBreakers.reset(userId);
+
             // revoke tokens
             if(revokeToken) {
                 final Json storedConfiguration = getUserConfiguration(userId);
@@ -406,6 +660,7 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
     public void removeUserConfiguration(String userId){
         if(StringUtils.isNotBlank(userId)){
             logger.debug(String.format("Remove user configuration [%s]", userId));
+            removeUserToken(userId);
             try {
                 // remove last user configuration
                 usersDataStore.removeById(userId);
@@ -437,6 +692,13 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         return response;
     }
 
+    /**
+     * @return attributes of the events fetched by the functions when the 'fields' option is not sent, or null to fetch full events
+     */
+    public String getDefaultEventFields() {
+        return StringUtils.trimToNull(defaultEventFields);
+    }
+
     public void checkDisconnection(final String userId, final HttpResponseException httpException, final String functionId){
         final StringBuilder err = new StringBuilder();
         err.append(httpException.getStatusCode()).append(" ");
@@ -462,17 +724,16 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     public Json checkUserById(final String userId){
         if(StringUtils.isNotBlank(userId)) {
-            Json conf = getUserConfiguration(userId);
-            if (conf != null && !conf.isEmpty()) {
-                Json checkedToken = client.checkTokenFromConfiguration(userId, conf);
+            final ValidToken currentToken = getUserToken(userId);
+            if (currentToken != null) {
+                if (!currentToken.isExpired()) {
+                    return currentToken.toJson().set(PROPERTY_ID, userId);
+                }
+                Json checkedToken = client.checkTokenFromConfiguration(userId, currentToken.toJson());
                 if (StringUtils.isNotBlank(checkedToken.string(PROPERTY_ERROR))) {
                     logger.info(String.format("Invalid token for user [%s]: %s", userId, checkedToken.string(PROPERTY_ERROR)));
                 } else {
-                    conf.set(PROPERTY_TOKEN, checkedToken.string(PROPERTY_TOKEN));
-                    conf.set(PROPERTY_REFRESH_TOKEN, checkedToken.string(PROPERTY_REFRESH_TOKEN));
-                    conf.set(PROPERTY_EXPIRATION_TIME, checkedToken.string(PROPERTY_EXPIRATION_TIME));
-
-                    return saveUserConfiguration(userId, conf, false);
+                    return updateUserToken(userId, checkedToken);
                 }
             } else {
                 logger.info(String.format("User [%s] is not connected", userId));
@@ -499,15 +760,11 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     public Json refreshUserCredentialsById(final String userId){
         if(StringUtils.isNotBlank(userId)) {
-            Json conf = getUserConfiguration(userId);
-            if (conf != null && !conf.isEmpty()) {
-                Json checkedToken = client.checkToken(userId, null, conf.string(ValidToken.REFRESH_TOKEN), null);
+            final ValidToken currentToken = getUserToken(userId);
+            if (currentToken != null) {
+                Json checkedToken = client.checkToken(userId, null, currentToken.getRefreshToken(), null);
                 if (StringUtils.isBlank(checkedToken.string(PROPERTY_ERROR))) {
-                    conf.set(PROPERTY_TOKEN, checkedToken.string(PROPERTY_TOKEN));
-                    conf.set(PROPERTY_REFRESH_TOKEN, checkedToken.string(PROPERTY_REFRESH_TOKEN));
-                    conf.set(PROPERTY_EXPIRATION_TIME, checkedToken.string(PROPERTY_EXPIRATION_TIME));
-
-                    return saveUserConfiguration(userId, conf, false);
+                    return updateUserToken(userId, checkedToken);
                 } else {
                     logger.info(String.format("Invalid token for user [%s]: %s", userId, checkedToken.string(PROPERTY_ERROR)));
                 }
@@ -520,10 +777,176 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         return null;
     }
 
+    /**
+     * Returns the token of the user from the memory cache, loading it from the user configuration when
+     * it is not cached yet. Cached tokens are checked against the user configuration every minute, because
+     * the user could be disconnected or connected again on another replica of the endpoint.
+     *
+     * @param userId user id
+     * @return token of the user or null if the user is not connected
+     */
+    private ValidToken getUserToken(final String userId){
+        ValidToken token = userTokens.get(userId);
+        if(token != null){
+            final Long checkedAt = userTokenChecks.get(userId);
+            if(checkedAt == null || System.currentTimeMillis() - checkedAt > TOKEN_REVALIDATION_INTERVAL){
+                token = revalidateUserToken(userId, token);
+            }
+        } else {
+            final Json conf = getUserConfiguration(userId);
+            if (conf != null && !conf.isEmpty()) {
+                token = new ValidToken(conf.string(PROPERTY_TOKEN), conf.string(PROPERTY_REFRESH_TOKEN), conf.string(PROPERTY_EXPIRATION_TIME));
+                cacheUserToken(userId, token);
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Updates the cached token of the user. The user configuration is saved only when the token changed, so
+     * callers that shared the same token renewal save it only once. The token is saved over the stored user
+     * configuration only, so a user disconnected while the token was renewed is not connected again.
+     *
+     * @param userId user id
+     * @param checkedToken token returned by the Google client
+     * @return token information of the user, or null if the user is not longer connected
+     */
+    private Json updateUserToken(final String userId, final Json checkedToken){
+        final ValidToken newToken = new ValidToken(checkedToken.string(PROPERTY_TOKEN), checkedToken.string(PROPERTY_REFRESH_TOKEN), checkedToken.string(PROPERTY_EXPIRATION_TIME));
+        final ValidToken previousToken = cacheUserToken(userId, newToken);
+
+        final Json tokenConfiguration = newToken.toJson();
+        if(previousToken == null || !StringUtils.equals(previousToken.getToken(), newToken.getToken())
+                || !StringUtils.equals(previousToken.getRefreshToken(), newToken.getRefreshToken())){
+            final Json storedConfiguration;
+            try {
+                storedConfiguration = usersDataStore.findById(userId);
+            } catch (Exception ex){
+                // the renewed token is used from memory and the stored one is renewed again when needed
+                logger.warn(String.format("Renewed token of user [%s] could not be saved [%s]", userId, ex.getMessage()));
+                return tokenConfiguration.set(PROPERTY_ID, userId);
+            }
+            if(storedConfiguration == null || storedConfiguration.isEmpty()){
+                logger.info(String.format("User [%s] was disconnected while the token was renewed, renewed token discarded", userId));
+                removeUserToken(userId);
+                return null;
+            }
+            storedConfiguration.merge(tokenConfiguration);
+            saveUserConfiguration(userId, storedConfiguration, false);
+        }
+        return tokenConfiguration.set(PROPERTY_ID, userId);
+    }
+
+    /**
+     * Checks the cached token of the user against the user configuration
+     *
+     * @param userId user id
+     * @param cachedToken token on the memory cache
+     * @return the token to use, or null if the user is not longer connected
+     */
+    private ValidToken revalidateUserToken(final String userId, final ValidToken cachedToken){
+        final Json conf;
+        try {
+            conf = usersDataStore.findById(userId);
+        } catch (Exception ex){
+            // the cached token is used until the user configuration can be read
+            logger.info(String.format("Token of user [%s] could not be checked [%s]", userId, ex.getMessage()));
+            return cachedToken;
+        }
+        if(conf == null || conf.isEmpty() || (StringUtils.isBlank(conf.string(PROPERTY_TOKEN)) && StringUtils.isBlank(conf.string(PROPERTY_REFRESH_TOKEN)))){
+            // the user was disconnected
+            logger.info(String.format("User [%s] is not longer connected, cached token discarded", userId));
+            if(userTokens.remove(userId, cachedToken)){
+                userTokenChecks.remove(userId);
+                if(tokenRefreshScheduler != null) {
+                    tokenRefreshScheduler.remove(userId);
+                }
+                client.invalidateServices(userId);
+            }
+            return null;
+        }
+        if(!StringUtils.equals(conf.string(PROPERTY_REFRESH_TOKEN), cachedToken.getRefreshToken())){
+            // the user was connected again, the stored token replaces the cached one
+            logger.info(String.format("User [%s] was connected again, cached token replaced", userId));
+            final ValidToken storedToken = new ValidToken(conf.string(PROPERTY_TOKEN), conf.string(PROPERTY_REFRESH_TOKEN), conf.string(PROPERTY_EXPIRATION_TIME));
+            cacheUserToken(userId, storedToken);
+            client.invalidateServices(userId);
+            return storedToken;
+        }
+        userTokenChecks.put(userId, System.currentTimeMillis());
+        return cachedToken;
+    }
+
+    private ValidToken cacheUserToken(final String userId, final ValidToken token){
+        final ValidToken previousToken = userTokens.put(userId, token);
+        userTokenChecks.put(userId, System.currentTimeMillis());
+        if(tokenRefreshScheduler != null && StringUtils.isNotBlank(token.getRefreshToken())) {
+            tokenRefreshScheduler.schedule(userId, token.getExpirationTime());
+        }
+        return previousToken;
+    }
+
+    private void removeUserToken(final String userId){
+        userTokens.remove(userId);
+        userTokenChecks.remove(userId);
+        if(tokenRefreshScheduler != null) {
+            tokenRefreshScheduler.remove(userId);
+        }
+    }
+
+    /**
+     * Renews the token of the user before it expires. It is executed by the token renewal scheduler.
+     *
+     * @param userId user id
+     * @return false if the renewal failed and has to be tried again later
+     */
+    private boolean refreshUserTokenInBackground(final String userId){
+        final ValidToken currentToken = userTokens.get(userId);
+        if(currentToken == null || StringUtils.isBlank(currentToken.getRefreshToken())){
+            // user was disconnected
+            return true;
+        }
+        // the user could be disconnected or connected again on another replica
+        final ValidToken storedToken = revalidateUserToken(userId, currentToken);
+        if(storedToken != currentToken){
+            // the user is not connected or the new token was scheduled when it was cached
+            return true;
+        }
+        try {
+            final Json checkedToken = client.checkToken(userId, null, currentToken.getRefreshToken(), null);
+            if (StringUtils.isBlank(checkedToken.string(PROPERTY_ERROR))) {
+                if (updateUserToken(userId, checkedToken) != null) {
+                    logger.info(String.format("Token renewed in background for user [%s]", userId));
+                }
+            } else {
+                logger.info(String.format("Invalid token for user [%s]: %s", userId, checkedToken.string(PROPERTY_ERROR)));
+            }
+            return true;
+        } catch (PermanentException ex){
+            // the refresh token was rejected, the user is disconnected when the token is used
+            logger.info(String.format("Token of user [%s] can not be renewed [%s]", userId, ex.getMessage()));
+            return true;
+        } catch (Exception ex){
+            logger.info(String.format("Token of user [%s] could not be renewed in background [%s]", userId, ex.getMessage()));
+            return false;
+        }
+    }
+
+    /**
+     * Executes a function with its own deadline, so the token renewal, the pages and the retries of
+     * the requests sent to Google stop once the time of the function is over. The deadline is removed
+     * when the function finishes, so the next task of the thread does not inherit it.
+     */
+    private Json callFunction(FunctionRequest request, Function<FunctionRequest, Json> function){
+        return Deadline.call(Deadline.after(functionTimeoutMillis), () -> function.apply(request));
+    }
+
     private GoogleCalendarService getService(Json body, String userId, String userEmail, String functionId){
         String token = null;
         Json checkedConf = null;
         if(StringUtils.isNotBlank(userId)){
+            // users with an open circuit fail before refreshing their token
+            circuitBreakers.check(userId);
             checkedConf = checkUserOrDisconnect(userId, functionId);
         } else if(body != null && StringUtils.isNotBlank(body.string(PROPERTY_TOKEN))){
             token = body.string(PROPERTY_TOKEN);
@@ -549,6 +972,8 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         String token = null;
         Json checkedConf = null;
         if(StringUtils.isNotBlank(userId)){
+            // users with an open circuit fail before refreshing their token
+            circuitBreakers.check(userId);
             checkedConf = checkUserOrDisconnect(userId, functionId);
         } else if(body != null && StringUtils.isNotBlank(body.string(PROPERTY_TOKEN))){
             token = body.string(PROPERTY_TOKEN);
@@ -583,6 +1008,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "getUserInformation")
     public Json getUserInformation(FunctionRequest request){
+        return callFunction(request, this::internalGetUserInformation);
+    }
+
+    private Json internalGetUserInformation(FunctionRequest request){
         final String userId = request.getUserId();
         appLogs.info(String.format("Request to GET USER INFORMATION received [%s]", userId));
 
@@ -608,6 +1037,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_findCalendars")
     public Json findCalendars(FunctionRequest request){
+        return callFunction(request, this::internalFindCalendars);
+    }
+
+    private Json internalFindCalendars(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -622,6 +1055,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_findOneCalendar")
     public Json findOneCalendar(FunctionRequest request){
+        return callFunction(request, this::internalFindOneCalendar);
+    }
+
+    private Json internalFindOneCalendar(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -639,6 +1076,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_createCalendar")
     public Json oldFunctionCreateCalendar(FunctionRequest request){
+        return callFunction(request, this::internalOldFunctionCreateCalendar);
+    }
+
+    private Json internalOldFunctionCreateCalendar(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -653,6 +1094,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_updateCalendar")
     public Json updateCalendar(FunctionRequest request){
+        return callFunction(request, this::internalUpdateCalendar);
+    }
+
+    private Json internalUpdateCalendar(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -667,6 +1112,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_deleteCalendar")
     public Json deleteCalendar(FunctionRequest request){
+        return callFunction(request, this::internalDeleteCalendar);
+    }
+
+    private Json internalDeleteCalendar(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -681,6 +1130,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_findEvents")
     public Json findEvents(FunctionRequest request){
+        return callFunction(request, this::internalFindEvents);
+    }
+
+    private Json internalFindEvents(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -695,6 +1148,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_findOneEvent")
     public Json findOneEvent(FunctionRequest request){
+        return callFunction(request, this::internalFindOneEvent);
+    }
+
+    private Json internalFindOneEvent(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -712,6 +1169,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_createEvent")
     public Json createEvent(FunctionRequest request){
+        return callFunction(request, this::internalCreateEvent);
+    }
+
+    private Json internalCreateEvent(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -726,6 +1187,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_updateEvent")
     public Json updateEvent(FunctionRequest request){
+        return callFunction(request, this::internalUpdateEvent);
+    }
+
+    private Json internalUpdateEvent(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -740,6 +1205,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_deleteEvent")
     public Json deleteEvent(FunctionRequest request){
+        return callFunction(request, this::internalDeleteEvent);
+    }
+
+    private Json internalDeleteEvent(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -752,8 +1221,66 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         return response;
     }
 
+    @EndpointFunction(name = "_batchCreateEvents")
+    public Json batchCreateEvents(FunctionRequest request){
+        return callFunction(request, this::internalBatchCreateEvents);
+    }
+
+    private Json internalBatchCreateEvents(FunctionRequest request){
+        final Json data = request.getJsonParams();
+        final String userId = request.getUserId();
+        final String functionId = request.getFunctionId();
+        appLogs.info("Request to BATCH CREATE EVENTS received");
+
+        final GoogleCalendarService service = getService(data, userId, request.getUserEmail(), functionId);
+
+        final Json response = service.batchCreateEvents(data.string(PARAMETER_CALENDAR_ID), data, functionId);
+        logger.info(String.format("Function BATCH CREATE EVENTS: [%s] errors", response.string("errors")));
+        return response;
+    }
+
+    @EndpointFunction(name = "_batchUpdateEvents")
+    public Json batchUpdateEvents(FunctionRequest request){
+        return callFunction(request, this::internalBatchUpdateEvents);
+    }
+
+    private Json internalBatchUpdateEvents(FunctionRequest request){
+        final Json data = request.getJsonParams();
+        final String userId = request.getUserId();
+        final String functionId = request.getFunctionId();
+        appLogs.info("Request to BATCH UPDATE EVENTS received");
+
+        final GoogleCalendarService service = getService(data, userId, request.getUserEmail(), functionId);
+
+        final Json response = service.batchUpdateEvents(data.string(PARAMETER_CALENDAR_ID), data, functionId);
+        logger.info(String.format("Function BATCH UPDATE EVENTS: [%s] errors", response.string("errors")));
+        return response;
+    }
+
+    @EndpointFunction(name = "_batchDeleteEvents")
+    public Json batchDeleteEvents(FunctionRequest request){
+        return callFunction(request, this::internalBatchDeleteEvents);
+    }
+
+    private Json internalBatchDeleteEvents(FunctionRequest request){
+        final Json data = request.getJsonParams();
+        final String userId = request.getUserId();
+        final String functionId = request.getFunctionId();
+        appLogs.info("Request to BATCH DELETE EVENTS received");
+
+        final GoogleCalendarService service = getService(data, userId, request.getUserEmail(), functionId);
+
+        final Json response = service.batchDeleteEvents(data.string(PARAMETER_CALENDAR_ID), data, functionId);
+        logger.info(String.format("Function BATCH DELETE EVENTS: [%s] errors", response.string("errors")));
+        return response;
+    }
+
     @EndpointFunction(name = "_getRequest")
     public Json getRequest(FunctionRequest request){
+        return callFunction(request, this::internalGetRequest);
+    }
+
+    private Json internalGetRequest(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -768,6 +1295,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_postRequest")
     public Json postRequest(FunctionRequest request){
+        return callFunction(request, this::internalPostRequest);
+    }
+
+    private Json internalPostRequest(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -784,6 +1315,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_putRequest")
     public Json putRequest(FunctionRequest request){
+        return callFunction(request, this::internalPutRequest);
+    }
+
+    private Json internalPutRequest(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -800,6 +1335,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_patchRequest")
     public Json patchRequest(FunctionRequest request){
+        return callFunction(request, this::internalPatchRequest);
+    }
+
+    private Json internalPatchRequest(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -816,6 +1355,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_deleteRequest")
     public Json deleteRequest(FunctionRequest request){
+        return callFunction(request, this::internalDeleteRequest);
+    }
+
+    private Json internalDeleteRequest(FunctionRequest request){
         final Json data = request.getJsonParams();
         final String userId = request.getUserId();
         final String functionId = request.getFunctionId();
@@ -841,6 +1384,10 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
 
     @EndpointFunction(name = "_oldFunction")
     public Json oldFunction(FunctionRequest request){
+        return callFunction(request, this::internalOldFunction);
+    }
+
+    private Json internalOldFunction(FunctionRequest request){
         final Json data = request.getJsonParams();
         if(data == null){
             throw EndpointException.permanent(ErrorCode.ARGUMENT, "Invalid function request");
@@ -1020,47 +1567,52 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         try {
             long processedEvents = 0;
             try {
-                final DataStoreResponse usersResponse = usersDataStore.find();
-                if(usersResponse != null && usersResponse.getItems() != null && !usersResponse.getItems().isEmpty()){
-                    final List<Json> users = usersResponse.getItems();
-                    logger.info(logSync(timerCounter, String.format("%s=%s - Sync users", TAG_USERS, users.size())));
-
-                    for (int userCounter = 0; userCounter < users.size(); userCounter++) {
-                        final Json user = users.get(userCounter);
-                        if (user == null || user.isEmpty() || !user.contains("_id") || StringUtils.isBlank(user.string("_id"))) {
-                            logger.warn(logSync(timerCounter, userCounter, String.format("- Invalid user [%s]", user)));
-                        } else {
-                            final String userId = user.string("_id");
-                            logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - Sync user", TAG_USER_ID, userId)));
+                // users are read page by page, only their ids are needed
+                final UserIdIterator users = new UserIdIterator(usersDataStore, UserIdIterator.DEFAULT_PAGE_SIZE);
+                final SyncProgress progress = new SyncProgress(timerCounter, 0);
+
+                // each user is synchronized by one of the workers, and the users are read while
+                // there are free workers, so the pending users are not kept in memory
+                final Semaphore pendingUsers = new Semaphore(syncWorkersCount * 2);
+                int userCounter = 0;
+                int otherReplicasUsers = 0;
+                while (users.hasNext()) {
+                    final String userId = users.next();
+                    if (!pollingReplicas.owns(userId)) {
+                        // the user is synchronized by other replica
+                        otherReplicasUsers++;
+                        continue;
+                    }
+                    final int counter = userCounter++;
+                    pendingUsers.acquire();
+                    try {
+                        syncWorkers.execute(() -> {
                             try {
-                                final List<Json> items = syncUser(userId, timerCounter, userCounter);
-                                for (int itemCounter = 0; itemCounter < items.size(); itemCounter++) {
-                                    try {
-                                        final Json item = items.get(itemCounter);
-                                        boolean processed = false;
-                                        if(item != null && !item.isEmpty()){
-                                            final String eventName = getEventName(item);
-                                            if(StringUtils.isNotBlank(eventName)) {
-                                                logger.debug(logSync(timerCounter, userCounter, itemCounter, String.format("%s=%s - %s [%s]", TAG_EVENT, eventName, ITEM_NAME, item)));
-                                                events().send(eventName, item, null, userId);
-                                                processed = true;
-                                            }
-                                        }
-                                        if(processed) {
-                                            // send event
-                                            processedEvents++;
-                                        } else {
-                                            logger.info(logSync(timerCounter, userCounter, itemCounter, String.format("- Invalid %s [%s]", ITEM_NAME, item)));
-                                        }
-                                    } catch (Exception exe){
-                                        logger.info(logSync(timerCounter, userCounter, itemCounter, String.format("- Error when try to send %s [%s]", ITEM_NAME, exe.getMessage())));
-                                    }
-                                }
-                            } catch (Exception exu) {
-                                logger.info(logSync(timerCounter, userCounter, String.format("- Error when try to process user %s [%s]", ITEMS_NAME, exu.getMessage())));
+                                syncAndSendUserEvents(userId, timerCounter, counter, progress);
+                            } finally {
+                                pendingUsers.release();
                             }
-                        }
+                        });
+                    } catch (RejectedExecutionException exu) {
+                        pendingUsers.release();
+                        throw exu;
                     }
+                }
+                if (otherReplicasUsers > 0) {
+                    logger.info(logSync(timerCounter, String.format("%s=%s - Users synchronized by other [%s] replicas", TAG_USERS, otherReplicasUsers, pollingReplicas.getReplicas() - 1)));
+                }
+                if (users.getInvalidUsers() > 0) {
+                    logger.warn(logSync(timerCounter, String.format("%s=%s - Invalid users", TAG_USERS, users.getInvalidUsers())));
+                }
+
+                if (userCounter > 0) {
+                    progress.setTotalUsers(userCounter);
+                    logger.info(logSync(timerCounter, String.format("%s=%s - Sync users", TAG_USERS, userCounter)));
+
+                    // wait until all the users are processed
+                    pendingUsers.acquire(syncWorkersCount * 2);
+                    pendingUsers.release(syncWorkersCount * 2);
+                    processedEvents = progress.getSentEvents();
                 } else {
                     logger.info(logSync(timerCounter, String.format("%s=%s - There is not users to sync", TAG_USERS, 0)));
                 }
@@ -1075,32 +1627,108 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
         logger.info(logSync(timerCounter, "------------------------------ END"));
     }
 
-    private List<Json> syncUser(String userId, long timerCounter, int userCounter) {
-        // list of events to send to application
-        final List<Json> eventsResponse = new ArrayList<>();
-
-        this.userSyncLock.lock();
+    private void syncAndSendUserEvents(String userId, long timerCounter, int userCounter, SyncProgress progress) {
+        if (circuitBreakers.isOpen(userId)) {
+            logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - Requests of the user are failing, skipped", TAG_USER_ID, userId)));
+            logProgress(progress, progress.userFinished(false, 0));
+            return;
+        }
+        logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - Sync user", TAG_USER_ID, userId)));
+        long processedEvents = 0;
+        boolean success = false;
         try {
-            // restore information about the last sync process over the user
-            Json lastSync;
+            // the sync of a user can not take longer than the polling interval, the calendars not
+            // finished in time are resumed on the next cycle from their checkpoints
+            processedEvents = Deadline.call(Deadline.after(pollingInterval), () -> syncUser(userId, timerCounter, userCounter));
+            success = true;
+        } catch (Exception exu) {
+            logger.info(logSync(timerCounter, userCounter, String.format("- Error when try to process user %s [%s]", ITEMS_NAME, exu.getMessage())));
+        } finally {
+            logProgress(progress, progress.userFinished(success, processedEvents));
+        }
+    }
+
+    private long sendUserEvents(String userId, List<Json> items, long timerCounter, int userCounter) {
+        if (eventBatcher != null) {
+            // valid changes are grouped and sent as batches
+            final List<Json> validItems = new ArrayList<>();
+            for (int itemCounter = 0; itemCounter < items.size(); itemCounter++) {
+                final Json item = items.get(itemCounter);
+                if (item != null && !item.isEmpty() && StringUtils.isNotBlank(getEventName(item))) {
+                    validItems.add(item);
+                } else {
+                    logger.info(logSync(timerCounter, userCounter, itemCounter, String.format("- Invalid %s [%s]", ITEM_NAME, item)));
+                }
+            }
+            // the changes are counted once their batch is sent, when the changes of the user are flushed
+            eventBatcher.add(userId, validItems);
+            return 0;
+        }
+
+        long processedEvents = 0;
+        for (int itemCounter = 0; itemCounter < items.size(); itemCounter++) {
             try {
-                lastSync = pollingDataStore.findById(userId);
-            } catch (Exception ex){
-                logger.info(logSync(timerCounter, userCounter, String.format("First sync for user [%s]", userId)));
-                lastSync = null;
+                final Json item = items.get(itemCounter);
+                boolean processed = false;
+                if(item != null && !item.isEmpty()){
+                    final String eventName = getEventName(item);
+                    if(StringUtils.isNotBlank(eventName)) {
+                        logger.debug(logSync(timerCounter, userCounter, itemCounter, String.format("%s=%s - %s [%s]", TAG_EVENT, eventName, ITEM_NAME, item)));
+                        events().send(eventName, item, null, userId);
+                        processed = true;
+                    }
+                }
+                if(processed) {
+                    // send event
+                    processedEvents++;
+                } else {
+                    logger.info(logSync(timerCounter, userCounter, itemCounter, String.format("- Invalid %s [%s]", ITEM_NAME, item)));
+                }
+            } catch (Exception exe){
+                logger.info(logSync(timerCounter, userCounter, itemCounter, String.format("- Error when try to send %s [%s]", ITEM_NAME, exe.getMessage())));
             }
-            Json lastCSync = lastSync != null ? lastSync.json(PARAMETER_CALENDARS) : null;
-            if(lastCSync == null){
-                lastCSync = Json.map();
+        }
+        return processedEvents;
+    }
+
+    private void sendEventsBatch(String userId, List<Json> items) {
+        logger.debug(String.format("%s=%s %s=%s - Sending %s batch", TAG_USER_ID, userId, TAG_EVENTS, items.size(), ITEMS_NAME));
+        events().send(SYNC_EVENTS_BATCH, Json.map()
+                .set(ITEMS_NAME, items)
+                .set("size", items.size()), null, userId);
+    }
+
+    private void logProgress(SyncProgress progress, boolean log) {
+        if (log) {
+            logger.info(logSync(progress.getCycle(), String.format("%s=%s %s=%s - Sync progress", TAG_PROGRESS, progress, TAG_QUEUE, deliveryPipeline)));
+        }
+    }
+
+    private long syncUser(String userId, long timerCounter, int userCounter) {
+        // events sent to application
+        final AtomicLong sentEvents = new AtomicLong(0);
+
+        if (!userSyncLocks.tryLock(userId)) {
+            logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - User is already being synchronized, skipped", TAG_USER_ID, userId)));
+            return 0;
+        }
+        try {
+            // restore information about the last sync process over the user
+            final CalendarsSyncState syncState = getSyncState(userId, timerCounter, userCounter);
+            if (isSavedByOtherReplica(syncState)) {
+                // the users were rebalanced and the previous replica may still be synchronizing the user
+                logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - User was synchronized recently by replica [%s], skipped", TAG_USER_ID, userId, syncState.getReplica())));
+                return 0;
             }
-            final Json lastCalSync = lastCSync;
+            // only the saves of the polling keep the user for this replica
+            syncState.setPollingReplica(pollingReplicas != null ? pollingReplicas.getReplicaId() : null);
 
             final GoogleCalendarService service = getService(null, userId, null, null);
 
-            //  retrieve the current calendar list of the user from the Google service
-            final Json calendars = service.findAllCalendars();
+            //  retrieve the changes on the calendar list of the user from the Google service
+            final Json calendars = service.syncCalendarList(syncState.getCalendarListToken());
             if(calendars == null || calendars.isEmpty()){
-                logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - No calendars found - Empty response", TAG_LAST_SYNC, lastCalSync.size())));
+                logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - No calendars found - Empty response", TAG_LAST_SYNC, syncState.getLastTokensCount())));
             } else if (calendars.is(Parameter.EXCEPTION_FLAG)) {
                 logger.warn(logSync(timerCounter, userCounter, String.format("- Error when try to synchronize events. Exception [%s]", calendars.toString())));
                 final String message = calendars.string("message");
@@ -1110,100 +1738,448 @@ public class GoogleCalendarEndpoint extends PerUserEndpoint {
                     appLogs.error(String.format("Google API exception: %s", calendars.toString()));
                 }
             } else if (!calendars.contains("calendars")) {
-                logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - No calendars found", TAG_LAST_SYNC, lastCalSync.size())));
+                logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - No calendars found", TAG_LAST_SYNC, syncState.getLastTokensCount())));
             } else {
-                // information about the current sync process
-                final Json newCalSync = Json.map();
+                // the local copy of the calendar list is updated with the changes
+                syncState.applyCalendarList(calendars);
+                final List<String> calendarList = syncState.getCalendarIds();
+                if (pushChannels != null && !calendars.jsons("calendars").isEmpty()) {
+                    // channels of the removed calendars are stopped
+                    pushChannels.removeStaleChannels(userId, calendarList, service);
+                }
+                logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s %s=%s - Calendars found",
+                        TAG_CALENDARS, calendarList.size(),
+                        TAG_CALENDAR_CHANGES, calendars.jsons("calendars").size(),
+                        TAG_LAST_SYNC, syncState.getLastTokensCount())));
 
-                final List<Json> calendarList = calendars.jsons("calendars");
-                logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s - Calendars found", TAG_CALENDARS, calendarList.size(), TAG_LAST_SYNC, lastCalSync.size())));
+                // duplicated changes of the events are removed before sending them
+                final EventCoalescer coalescer = new EventCoalescer();
 
                 // for each current calendar
-                calendarList.forEach(calendar -> {
-                    final String calendarId = calendar.string("id");
+                final Semaphore userPermits = new Semaphore(calendarsPerUser);
+                final List<Future<?>> tasks = new ArrayList<>();
+                final long cycleTime = System.currentTimeMillis();
+                final Deadline deadline = Deadline.current();
+                int skippedCalendars = 0;
+                int delayedCalendars = 0;
+                for (String calendarId : calendarList) {
                     if (StringUtils.isNotBlank(calendarId)) {
-                        try {
-                            final String calendarKey = MapsUtils.cleanDotKey(calendarId);
-                            final String lastQueryToken = lastCalSync.string(calendarKey);
-
-                            // keep last query token
-                            newCalSync.set(calendarKey, lastQueryToken);
-
-                            // get the events with the last query token (or null if is the first sync process over the calendar)
-                            final Json response = service.eventsSync(calendarId, lastQueryToken, null);
-
-                            if (response.is(Parameter.EXCEPTION_FLAG)) {
-                                logger.warn(logSync(timerCounter, userCounter, String.format("%s=%s - Error when try to synchronize events of calendar. Exception [%s]",
-                                        TAG_CALENDAR, calendarKey,
-                                        response.toString())));
-                                final String message = response.string("message");
-                                if (StringUtils.isNotBlank(message)) {
-                                    appLogs.error(String.format("Google API exception: %s", message));
-                                } else {
-                                    appLogs.error(String.format("Google API exception: %s", response.toString()));
-                                }
-                            } else {
-                                final String newQueryToken = response.string("queryToken");
-                                if (StringUtils.isNotBlank(newQueryToken)) {
-                                    // save new query token
-                                    newCalSync.set(calendarKey, newQueryToken);
-
-                                    // check if these events are new ones
-                                    boolean sameTokens = true;
-                                    if (!newQueryToken.equals(lastQueryToken)) {
-                                        sameTokens = false;
-
-                                        // add events from the calendar to the events list
-                                        final List<Json> newEvents = response.jsons("events");
-
-                                        if (newEvents != null && !newEvents.isEmpty()) {
-                                            eventsResponse.addAll(newEvents);
-                                            logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s - Calendar events",
-                                                    TAG_CALENDAR, calendarKey,
-                                                    TAG_EVENTS, newEvents.size())));
-                                        } else {
-                                            logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=0 - No calendar events",
-                                                    TAG_CALENDAR, calendarKey,
-                                                    TAG_EVENTS)));
-                                        }
+                        final String calendarKey = MapsUtils.cleanDotKey(calendarId);
+                        if (!syncState.isSyncDue(calendarKey, cycleTime)) {
+                            // calendar without recent changes, its last token is kept until the next sync
+                            syncState.setToken(calendarKey, syncState.getLastToken(calendarKey));
+                            skippedCalendars++;
+                            continue;
+                        }
+                        if (Deadline.expired()) {
+                            // the time of the user is over, the calendar is synchronized on the next cycle
+                            syncState.setToken(calendarKey, syncState.getLastToken(calendarKey));
+                            delayedCalendars++;
+                            continue;
+                        }
+                        final Runnable task = () -> {
+                            if (pushChannels != null) {
+                                // keep a channel to receive the changes of the calendar, so it is polled only as fallback
+                                pushChannels.ensureChannel(userId, calendarId, service);
+                            }
+
+                            sentEvents.addAndGet(syncCalendar(service, userId, calendarId, syncState, coalescer, timerCounter, userCounter));
+                        };
+                        if (calendarWorkers == null) {
+                            task.run();
+                        } else {
+                            // at most 'calendarsPerUser' calendars of the user are synchronized at the same time
+                            userPermits.acquire();
+                            try {
+                                tasks.add(calendarWorkers.submit(() -> {
+                                    try {
+                                        // the calendar is synchronized with the deadline of the user
+                                        Deadline.run(deadline, task);
+                                    } finally {
+                                        userPermits.release();
                                     }
-                                    logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s %s=%s - Tokens",
-                                            TAG_CALENDAR, calendarKey,
-                                            TAG_TOKEN_LAST, lastQueryToken,
-                                            TAG_TOKEN_NEW, sameTokens ? "no_change" : newQueryToken)));
-                                } else {
-                                    logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s %s=empty - Tokens",
-                                            TAG_CALENDAR, calendarKey,
-                                            TAG_TOKEN_LAST, lastQueryToken,
-                                            TAG_TOKEN_NEW)));
-                                }
+                                }));
+                            } catch (RejectedExecutionException ex) {
+                                userPermits.release();
+                                throw ex;
                             }
-                        } catch (Exception ex) {
-                            logger.warn(logSync(timerCounter, userCounter, String.format("%s=%s - Error when try to synchronize calendar. Exception [%s]",
-                                    TAG_CALENDAR_ID, calendarId,
-                                    ex.toString())), ex);
                         }
                     }
-                });
-
-                // save the new sync information on the data store
-                pollingDataStore.save(Json.map()
-                        .set(PARAMETER_ID, userId)
-                        .set(PARAMETER_CALENDARS, newCalSync)
-                        .set(PARAMETER_LAST_SYNC, System.currentTimeMillis())
-                        .set(Parameter.DATA_STORE_TTL, MAX_WAITING_BETWEEN_SYNCS)
-                );
+                }
+
+                // wait until all the calendars are processed
+                for (Future<?> task : tasks) {
+                    try {
+                        task.get();
+                    } catch (ExecutionException exc) {
+                        logger.warn(logSync(timerCounter, userCounter, String.format("- Error when try to synchronize calendar. Exception [%s]", exc.getMessage())));
+                    }
+                }
+                if (coalescer.getDiscardedEvents() > 0) {
+                    logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - Duplicated changes discarded", TAG_EVENTS, coalescer.getDiscardedEvents())));
+                }
+                if (skippedCalendars > 0) {
+                    logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - Calendars without recent changes skipped", TAG_CALENDARS, skippedCalendars)));
+                }
+                if (delayedCalendars > 0) {
+                    logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - Calendars delayed to the next cycle, the time of the user is over", TAG_CALENDARS, delayedCalendars)));
+                }
+
+                // pending changes are sent before storing the new sync tokens
+                if (flushPendingEvents(userId, sentEvents)) {
+                    // save the new sync information on the data store
+                    saveSyncState(userId, syncState, true, System.currentTimeMillis());
+                } else {
+                    logger.warn(logSync(timerCounter, userCounter, "- Pending changes could not be sent, sync information not saved"));
+                }
             }
 
         } catch (Exception ex) {
             logger.warn(logSync(timerCounter, userCounter, String.format("- Error when try to synchronize calendars. Exception [%s]", ex.toString())));
         } finally {
-            this.userSyncLock.unlock();
+            if (eventBatcher != null) {
+                // the changes of the user are not kept until the next cycle
+                flushPendingEvents(userId, sentEvents);
+                eventBatcher.release(userId);
+            }
+            userSyncLocks.unlock(userId);
+        }
+        logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - Events sent", TAG_EVENTS, sentEvents.get())));
+
+        // return the number of events sent to application
+        return sentEvents.get();
+    }
+
+    private CalendarsSyncState getSyncState(String userId, long timerCounter, int userCounter) {
+        try {
+            return CalendarsSyncState.fromJson(pollingDataStore.findById(userId));
+        } catch (Exception ex){
+            logger.info(logSync(timerCounter, userCounter, String.format("First sync for user [%s]", userId)));
+            return CalendarsSyncState.fromJson(null);
+        }
+    }
+
+    /**
+     * Checks if the sync information of the user was saved by other replica within its lease time
+     */
+    private boolean isSavedByOtherReplica(CalendarsSyncState syncState) {
+        return pollingReplicas != null && syncState.isSavedByOtherReplica(pollingReplicas.getReplicaId(), System.currentTimeMillis(), pollingReplicas.getLeaseTime());
+    }
+
+    private void saveSyncState(String userId, CalendarsSyncState syncState, boolean allCalendars, Long lastSyncTime) {
+        // calendars of the user are synchronized in parallel, saves are serialized so the last snapshot is the stored one
+        synchronized (syncState) {
+            pollingDataStore.save(syncState.toJson(userId, allCalendars, lastSyncTime)
+                    .set(Parameter.DATA_STORE_TTL, MAX_WAITING_BETWEEN_SYNCS)
+            );
         }
-        logger.info(logSync(timerCounter, userCounter, String.format("%s=%s - Events sent", TAG_EVENTS, eventsResponse.size())));
+    }
+
+    /**
+     * Fetches the changes of one calendar since its last sync token and sends them to the application
+     * page by page, as they are fetched from Google
+     *
+     * @param service calendar service of the user
+     * @param userId user id
+     * @param calendarId calendar id
+     * @param syncState sync information of the user, updated with the new token of the calendar
+     * @param coalescer coalescer of the changes found on the current sync of the user
+     * @return number of events sent to the application
+     */
+    private long syncCalendar(GoogleCalendarService service, String userId, String calendarId, CalendarsSyncState syncState, EventCoalescer coalescer, long timerCounter, int userCounter) {
+        final AtomicLong sentEvents = new AtomicLong(0);
+        try {
+            final String calendarKey = MapsUtils.cleanDotKey(calendarId);
+            final String lastQueryToken = syncState.getLastToken(calendarKey);
+            final Json checkpoint = syncState.getCheckpoint(calendarKey);
+
+            // keep last query token
+            syncState.setToken(calendarKey, lastQueryToken);
+
+            if (checkpoint != null) {
+                logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s - Resuming calendar sync",
+                        TAG_CALENDAR, calendarKey,
+                        TAG_PAGE_TOKEN, checkpoint.string(GoogleCalendarService.CHECKPOINT_PAGE_TOKEN))));
+            }
+
+            // get the events with the last query token (or null if is the first sync process over the calendar)
+            final AtomicReference<Future<Long>> pendingDelivery = new AtomicReference<>();
+            final AtomicReference<Json> pendingCheckpoint = new AtomicReference<>();
+            final Json response = service.eventsSync(calendarId, lastQueryToken, null, (events, nextCheckpoint) -> {
+                // this page was fetched while the previous one was delivered; the previous page must be
+                // delivered before queuing this one, so the changes of the calendar are sent in order
+                final Future<Long> previousDelivery = pendingDelivery.get();
+                if (previousDelivery != null) {
+                    sentEvents.addAndGet(awaitDelivery(previousDelivery, timerCounter, userCounter));
+                    storeCheckpoint(userId, calendarKey, syncState, pendingCheckpoint.get(), sentEvents);
+                }
+                pendingDelivery.set(deliverUserEvents(userId, coalescer.coalesce(events), timerCounter, userCounter));
+                pendingCheckpoint.set(nextCheckpoint);
+                logger.debug(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s %s=%s - Calendar page",
+                        TAG_CALENDAR, calendarKey,
+                        TAG_EVENTS, events.size(),
+                        TAG_PAGE_TOKEN, nextCheckpoint != null ? nextCheckpoint.string(GoogleCalendarService.CHECKPOINT_PAGE_TOKEN) : null)));
+            }, checkpoint, StringUtils.trimToNull(syncEventFields), syncState.getRecoveryTime(calendarKey));
+
+            // wait for the delivery of the last page
+            final Future<Long> lastDelivery = pendingDelivery.getAndSet(null);
+            if (lastDelivery != null) {
+                sentEvents.addAndGet(awaitDelivery(lastDelivery, timerCounter, userCounter));
+                storeCheckpoint(userId, calendarKey, syncState, pendingCheckpoint.get(), sentEvents);
+            }
+
+            if (response.is(Parameter.EXCEPTION_FLAG)) {
+                logger.warn(logSync(timerCounter, userCounter, String.format("%s=%s - Error when try to synchronize events of calendar. Exception [%s]",
+                        TAG_CALENDAR, calendarKey,
+                        response.toString())));
+                final String message = response.string("message");
+                if (StringUtils.isNotBlank(message)) {
+                    appLogs.error(String.format("Google API exception: %s", message));
+                } else {
+                    appLogs.error(String.format("Google API exception: %s", response.toString()));
+                }
+            } else {
+                final String newQueryToken = response.string("queryToken");
+                if (StringUtils.isNotBlank(newQueryToken)) {
+                    // events of the calendar were already sent page by page
+                    final Long newEvents = response.longInteger("eventsCount");
+
+                    // save new query token, the sync of the calendar finished
+                    syncState.setToken(calendarKey, newQueryToken);
+                    syncState.setCheckpoint(calendarKey, null);
+                    if (pushChannels != null && pushChannels.hasValidChannel(userId, calendarId)) {
+                        // changes of the calendar are pushed by Google, it is polled only as fallback
+                        syncState.registerPushedSync(calendarKey, newEvents != null && newEvents > 0, System.currentTimeMillis(), maxCalendarInterval);
+                    } else {
+                        syncState.registerSync(calendarKey, newEvents != null && newEvents > 0, System.currentTimeMillis(), pollingInterval, maxCalendarInterval);
+                    }
+
+                    // check if these events are new ones
+                    boolean sameTokens = true;
+                    if (!newQueryToken.equals(lastQueryToken)) {
+                        sameTokens = false;
+
+                        if (newEvents != null && newEvents > 0) {
+                            logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s %s=%s - Calendar events",
+                                    TAG_CALENDAR, calendarKey,
+                                    TAG_EVENTS, newEvents,
+                                    TAG_PAGES, response.integer("pages"))));
+                        } else {
+                            logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=0 - No calendar events",
+                                    TAG_CALENDAR, calendarKey,
+                                    TAG_EVENTS)));
+                        }
+                    }
+                    logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s %s=%s - Tokens",
+                            TAG_CALENDAR, calendarKey,
+                            TAG_TOKEN_LAST, lastQueryToken,
+                            TAG_TOKEN_NEW, sameTokens ? "no_change" : newQueryToken)));
+                } else if (response.bool("partial", false)) {
+                    // the events fetched so far were sent and the sync is resumed from the last checkpoint
+                    logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s %s=%s - Calendar sync stopped by the deadline",
+                            TAG_CALENDAR, calendarKey,
+                            TAG_EVENTS, response.longInteger("eventsCount"),
+                            TAG_PAGES, response.integer("pages"))));
+                } else {
+                    logger.info(logSync(timerCounter, userCounter, String.format("%s=%s %s=%s %s=empty - Tokens",
+                            TAG_CALENDAR, calendarKey,
+                            TAG_TOKEN_LAST, lastQueryToken,
+                            TAG_TOKEN_NEW)));
+                }
+            }
+        } catch (Exception ex) {
+            logger.warn(logSync(timerCounter, userCounter, String.format("%s=%s - Error when try to synchronize calendar. Exception [%s]",
+                    TAG_CALENDAR_ID, calendarId,
+                    ex.toString())), ex);
+        }
+        return sentEvents.get();
+    }
+
+    /**
+     * Stores the page where the sync of the calendar must be resumed, once the events of the
+     * previous pages were delivered
+     */
+    private void storeCheckpoint(String userId, String calendarKey, CalendarsSyncState syncState, Json checkpoint, AtomicLong sentEvents) {
+        syncState.setCheckpoint(calendarKey, checkpoint);
+        // pending changes are sent before storing the checkpoint
+        if (checkpoint != null && flushPendingEvents(userId, sentEvents)) {
+            saveSyncState(userId, syncState, false, syncState.getLastSync());
+        }
+    }
+
+    /**
+     * Sends the changes of the user that are waiting on the batcher
+     *
+     * @param sentEvents counter of the events sent to the application, increased with the sent batches
+     * @return false if some changes could not be sent, so the sync information must not be saved
+     */
+    private boolean flushPendingEvents(String userId, AtomicLong sentEvents) {
+        if (eventBatcher == null) {
+            return true;
+        }
+        final long sent = eventBatcher.flush(userId);
+        if (sent == EventBatcher.FLUSH_FAILED) {
+            return false;
+        }
+        sentEvents.addAndGet(sent);
+        return true;
+    }
+
+    /**
+     * Queues the delivery of the changes on the delivery pipeline, or delivers them right away
+     * if there is not a pipeline
+     *
+     * @return the number of events sent to the application
+     */
+    private Future<Long> deliverUserEvents(String userId, List<Json> items, long timerCounter, int userCounter) {
+        if (deliveryPipeline == null) {
+            return CompletableFuture.completedFuture(sendUserEvents(userId, items, timerCounter, userCounter));
+        }
+        try {
+            // it waits while the queue is full, so the fetch does not get ahead of the delivery
+            return deliveryPipeline.submit(items.size(), () -> sendUserEvents(userId, items, timerCounter, userCounter));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the delivery of the events", ex);
+        }
+    }
+
+    private long awaitDelivery(Future<Long> delivery, long timerCounter, int userCounter) {
+        try {
+            final Long sent = delivery.get();
+            return sent != null ? sent : 0;
+        } catch (ExecutionException ex) {
+            logger.warn(logSync(timerCounter, userCounter, String.format("- Error when try to deliver %s [%s]", ITEMS_NAME, ex.getMessage())));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.warn(logSync(timerCounter, userCounter, String.format("- Interrupted while waiting for the delivery of %s", ITEMS_NAME)));
+        }
+        return 0;
+    }
+
+    @EndpointWebService(path = "push")
+    public String pushNotification(WebServiceRequest request){
+        if (pushChannels == null) {
+            return "ok";
+        }
+        // the work is executed outside the request to answer Google as fast as possible
+        pushChannels.handleNotification(getHeader(request, HEADER_CHANNEL_ID), getHeader(request, HEADER_CHANNEL_TOKEN), getHeader(request, HEADER_RESOURCE_STATE),
+                channel -> syncWorkers.execute(() -> syncPushedCalendar(channel, 1)),
+                channel -> syncWorkers.execute(() -> stopPushedChannel(channel)));
+        return "ok";
+    }
+
+    private static String getHeader(WebServiceRequest request, String name) {
+        String value = request.getHeader(name);
+        if (StringUtils.isBlank(value)) {
+            value = request.getHeader(name.toLowerCase());
+        }
+        return value;
+    }
+
+    /**
+     * Fetches and sends the changes of the calendar that generated a push notification
+     *
+     * @param channel channel that received the notification
+     * @param attempt number of attempt, the sync is retried when the user is being synchronized
+     */
+    private void syncPushedCalendar(PushChannel channel, int attempt) {
+        final long timerCounter = pushCounter.getAndIncrement();
+        final String userId = channel.getUserId();
+        logger.info(logPush(timerCounter, String.format("%s=%s %s=%s - Push notification", TAG_USER_ID, userId, TAG_CALENDAR_ID, channel.getCalendarId())));
+
+        if (!userSyncLocks.tryLock(userId)) {
+            retryPushedCalendar(channel, attempt, timerCounter, PUSH_RETRY_DELAY);
+            return;
+        }
+
+        final AtomicLong sentEvents = new AtomicLong(0);
+        try {
+            if (getUserToken(userId) == null) {
+                // the user was disconnected, the channel expires on Google by itself
+                logger.info(logPush(timerCounter, String.format("%s=%s - User is not connected, channel removed", TAG_USER_ID, userId)));
+                pushChannels.remove(channel);
+                return;
+            }
+            final CalendarsSyncState syncState = getSyncState(userId, timerCounter, PUSH_USER_COUNTER);
+            if (isSavedByOtherReplica(syncState)) {
+                // other replica may be synchronizing the user, the sync is retried once its lease is over
+                final long leaseEnd = syncState.getSavedAt() + pollingReplicas.getLeaseTime();
+                retryPushedCalendar(channel, attempt, timerCounter, Math.max(PUSH_RETRY_DELAY, leaseEnd - System.currentTimeMillis()));
+                return;
+            }
+
+            // the renewal of the token is part of the sync, so it is bounded by its deadline too
+            sentEvents.addAndGet(Deadline.call(Deadline.after(pollingInterval), () -> {
+                final GoogleCalendarService service = getService(null, userId, null, null);
+                return syncCalendar(service, userId, channel.getCalendarId(), syncState, new EventCoalescer(), timerCounter, PUSH_USER_COUNTER);
+            }));
+
+            // only the pushed calendar was synchronized, the tokens of the other calendars are kept
+            if (flushPendingEvents(userId, sentEvents)) {
+                saveSyncState(userId, syncState, false, syncState.getLastSync() != null ? syncState.getLastSync() : System.currentTimeMillis());
+            } else {
+                logger.warn(logPush(timerCounter, "- Pending changes could not be sent, sync information not saved"));
+            }
+        } catch (Exception ex) {
+            logger.warn(logPush(timerCounter, String.format("%s=%s - Error when try to synchronize pushed calendar. Exception [%s]", TAG_CALENDAR_ID, channel.getCalendarId(), ex.toString())));
+        } finally {
+            if (eventBatcher != null) {
+                flushPendingEvents(userId, sentEvents);
+                eventBatcher.release(userId);
+            }
+            userSyncLocks.unlock(userId);
+        }
+
+        logger.info(logPush(timerCounter, String.format("%s=%s - Events sent", TAG_EVENTS, sentEvents.get())));
+    }
+
+    private void retryPushedCalendar(PushChannel channel, int attempt, long timerCounter, long delay) {
+        if (attempt < MAX_PUSH_ATTEMPTS) {
+            pushRetries.schedule(() -> syncPushedCalendar(channel, attempt + 1), delay, TimeUnit.MILLISECONDS);
+        } else {
+            logger.info(logPush(timerCounter, String.format("%s=%s - User is being synchronized, notification skipped", TAG_USER_ID, channel.getUserId())));
+        }
+    }
+
+    /**
+     * Stops on Google the channel of a calendar that does not exist anymore
+     *
+     * @param channel channel of the removed calendar
+     */
+    private void stopPushedChannel(PushChannel channel) {
+        try {
+            final ValidToken token = getUserToken(channel.getUserId());
+            if (token != null && !token.isExpired()) {
+                client.getService(channel.getUserId(), token.getToken(), this).stopChannel(channel.getChannelId(), channel.getResourceId());
+            }
+        } catch (Exception ex) {
+            logger.info(String.format("Channel [%s] could not be stopped [%s]", channel.getChannelId(), ex.getMessage()));
+        }
+    }
+
+    private static String logPush(long pushCounter, String log){
+        return String.format("%s=%s %s", TAG_PUSH, pushCounter, log);
+    }
+
+    private static long parseProperty(String value, long defaultValue, String name){
+        if(StringUtils.isNotBlank(value)){
+            try {
+                final long parsed = Long.parseLong(value.trim());
+                if(parsed > 0){
+                    return parsed;
+                }
+            } catch (Exception ex){
+                // invalid value, default value is used
+            }
+            logger.warn(String.format("Invalid configured %s [%s]", name, value));
+        }
+        return defaultValue;
+    }
 
-        // return the list of events to send to application
-        return eventsResponse;
+    private static long parseMinutesProperty(String value, long defaultValue, String name){
+        final long minutes = parseProperty(value, -1, name);
+        return minutes > 0 ? TimeUnit.MINUTES.toMillis(minutes) : defaultValue;
     }
 
     private static String logSync(long timerCounter, String log){
@@ -1,14 +1,12 @@
 package io.slingr.endpoints.googlecalendar.services;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.http.HttpResponseException;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson.JacksonFactory;
 import com.google.api.services.oauth2.Oauth2;
 import com.google.api.services.oauth2.model.Userinfoplus;
 import io.slingr.endpoints.exceptions.EndpointException;
 import io.slingr.endpoints.googlecalendar.services.entities.ApiException;
+import io.slingr.endpoints.googlecalendar.services.utils.GoogleTransport;
 import io.slingr.endpoints.utils.Json;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -37,11 +35,9 @@ public class GoogleAuthenticationService {
 
         final Oauth2 service;
         try {
-            final NetHttpTransport nt = GoogleNetHttpTransport.newTrustedTransport();
-            final JacksonFactory jf = new JacksonFactory();
             final GoogleCredential cd = new GoogleCredential().setAccessToken(token);
 
-            service = new Oauth2.Builder(nt, jf, cd)
+            service = new Oauth2.Builder(GoogleTransport.getHttpTransport(), GoogleTransport.getJsonFactory(), cd)
                     .setApplicationName(applicationName)
                     .build();
         } catch (HttpResponseException e) {
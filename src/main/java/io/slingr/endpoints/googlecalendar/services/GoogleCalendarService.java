@@ -1,5 +1,11 @@
 package io.slingr.endpoints.googlecalendar.services;
 
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
 import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.json.GenericJson;
 import com.google.api.client.util.DateTime;
@@ -10,6 +16,9 @@ import io.slingr.endpoints.exceptions.ErrorCode;
 import io.slingr.endpoints.googlecalendar.GoogleCalendarEndpoint;
 import io.slingr.endpoints.googlecalendar.services.entities.ApiException;
 import io.slingr.endpoints.googlecalendar.services.utils.DateTimeUtils;
+import io.slingr.endpoints.googlecalendar.services.utils.Deadline;
+import io.slingr.endpoints.googlecalendar.services.utils.RequestRateLimiter;
+import io.slingr.endpoints.googlecalendar.services.utils.RequestRetryPolicy;
 import io.slingr.endpoints.services.exchange.Parameter;
 import io.slingr.endpoints.utils.Json;
 import org.apache.commons.lang3.StringUtils;
@@ -23,7 +32,6 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * <p>Service class that interacts with the Google Calendar API
@@ -35,12 +43,25 @@ public class GoogleCalendarService {
 
     public static final String EXPIRATION_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
     private static final DateFormat DATE_FORMAT = new SimpleDateFormat(EXPIRATION_TIME_FORMAT);
+    public static final int MAX_BATCH_SIZE = 50;
+    private static final String BATCH_URL = "https://www.googleapis.com/batch/calendar/v3";
+    private static final String EVENTS_URL = "https://www.googleapis.com/calendar/v3/calendars/%s/events";
+    private static final String EVENT_URL = "https://www.googleapis.com/calendar/v3/calendars/%s/events/%s";
+
+    // fields always fetched when the events are projected, because they are needed to process the changes
+    private static final String REQUIRED_EVENT_FIELDS = "id,status,updated";
+    private static final String CALENDAR_LIST_SYNC_FIELDS = "nextPageToken,nextSyncToken,items(id,deleted,hidden)";
 
     private final String userId;
     private final GenericGoogleCalendarService service;
     private final GoogleCalendarEndpoint endpoint;
+    private final RequestRetryPolicy retryPolicy;
 
     public GoogleCalendarService(String userId, String applicationName, String token, GoogleCalendarEndpoint endpoint) {
+        this(userId, applicationName, token, endpoint, null, null);
+    }
+
+    public GoogleCalendarService(String userId, String applicationName, String token, GoogleCalendarEndpoint endpoint, RequestRateLimiter rateLimiter, RequestRetryPolicy retryPolicy) {
         this.userId = userId;
         if (StringUtils.isBlank(token)) {
             throw new IllegalArgumentException("Invalid token");
@@ -51,7 +72,7 @@ public class GoogleCalendarService {
 
         final GenericGoogleCalendarService service;
         try {
-            service = new GenericGoogleCalendarService(applicationName, token);
+            service = new GenericGoogleCalendarService(applicationName, token, userId, rateLimiter);
         } catch (HttpResponseException e) {
             logger.info(String.format("Invalid response when try to build the Google Calendar client [%s]", e.getContent() != null ? e.getContent() : e.getMessage()));
             throw ApiException.generate("Invalid response when try to build the Google Calendar client", e);
@@ -62,6 +83,11 @@ public class GoogleCalendarService {
         }
         this.service = service;
         this.endpoint = endpoint;
+        this.retryPolicy = retryPolicy;
+    }
+
+    private <T> T execute(AbstractGoogleClientRequest<T> request) throws IOException {
+        return retryPolicy != null ? retryPolicy.execute(userId, request) : request.execute();
     }
 
     private String checkCalendarId(String value, Json options){
@@ -89,7 +115,11 @@ public class GoogleCalendarService {
             calendarId = checkCalendarId(calendarId, options);
             logger.info(String.format("Calendar id [%s]", calendarId));
 
-            final Calendar calendar = service.calendars().get(calendarId).execute();
+            final com.google.api.services.calendar.Calendar.Calendars.Get get = service.calendars().get(calendarId);
+            if (options != null && StringUtils.isNotBlank(options.string("fields"))) {
+                get.setFields(options.string("fields"));
+            }
+            final Calendar calendar = execute(get);
             final Json response = getJson(calendar);
 
             logger.info(String.format("Calendar found [%s]", response));
@@ -107,7 +137,7 @@ public class GoogleCalendarService {
         try {
             logger.info(String.format("Get calendars [%s]", params));
 
-            final CalendarList calendarList = calendarQuery(params).execute();
+            final CalendarList calendarList = execute(calendarQuery(params));
             final Json response = getJson(calendarList);
 
             logger.info(String.format("Calendars found [%s]", response));
@@ -125,7 +155,7 @@ public class GoogleCalendarService {
         try {
             final Calendar c = fillCalendar(calendar);
 
-            final Calendar createdCalendar = service.calendars().insert(c).execute();
+            final Calendar createdCalendar = execute(service.calendars().insert(c));
             final Json response = getJson(createdCalendar);
 
             logger.info(String.format("Created calendar [%s]", response));
@@ -143,7 +173,7 @@ public class GoogleCalendarService {
         try {
             final Calendar c = fillCalendar(calendar);
 
-            final Calendar updatedCalendar = service.calendars().update(c.getId(), c).execute();
+            final Calendar updatedCalendar = execute(service.calendars().update(c.getId(), c));
             final Json response = getJson(updatedCalendar);
 
             logger.info(String.format("Updated calendar [%s]", response));
@@ -165,12 +195,12 @@ public class GoogleCalendarService {
             if(calendar.bool("primary", false)){
                 // primary calendar -> clear
                 logger.info(String.format("Clear primary calendar [%s]", calendarId));
-                service.calendars().clear(calendarId).execute();
+                execute(service.calendars().clear(calendarId));
                 logger.info("Calendar cleared");
             } else {
                 // secondary calendar -> delete
                 logger.info(String.format("Delete secondary calendar [%s]", calendarId));
-                service.calendars().delete(calendarId).execute();
+                execute(service.calendars().delete(calendarId));
                 logger.info("Calendar deleted");
             }
             return calendar;
@@ -189,7 +219,12 @@ public class GoogleCalendarService {
             eventId = checkEventId(eventId, options);
             logger.info(String.format("Event id [%s][%s]", eventId, calendarId));
 
-            final Event event = service.events().get(calendarId, eventId).execute();
+            final com.google.api.services.calendar.Calendar.Events.Get get = service.events().get(calendarId, eventId);
+            final String fields = buildEventFields(options != null && StringUtils.isNotBlank(options.string("fields")) ? options.string("fields") : endpoint.getDefaultEventFields());
+            if (fields != null) {
+                get.setFields(fields);
+            }
+            final Event event = execute(get);
             final Json response = getJson(event);
 
             logger.info(String.format("Event found [%s]", response));
@@ -208,7 +243,7 @@ public class GoogleCalendarService {
             calendarId = checkCalendarId(calendarId, params);
             logger.info(String.format("Get events [%s]", params));
 
-            final Events events = eventsQuery(calendarId, params).execute();
+            final Events events = execute(eventsQuery(calendarId, params));
             final Json response = getJson(events);
 
             logger.info(String.format("Events found [%s]", response));
@@ -226,7 +261,7 @@ public class GoogleCalendarService {
         try {
             calendarId = checkCalendarId(calendarId, event);
 
-            final String url = String.format("https://www.googleapis.com/calendar/v3/calendars/%s/events", calendarId);
+            final String url = String.format(EVENTS_URL, calendarId);
 
             final Json response = postRequest(url, event, functionId);
             logger.info(String.format("Created event [%s]", response));
@@ -243,7 +278,7 @@ public class GoogleCalendarService {
             calendarId = checkCalendarId(calendarId, event);
             eventId = checkEventId(eventId, event);
 
-            final String url = String.format("https://www.googleapis.com/calendar/v3/calendars/%s/events/%s", calendarId, eventId);
+            final String url = String.format(EVENT_URL, calendarId, eventId);
 
             final Json response = putRequest(url, event, functionId);
             logger.info(String.format("Updated event [%s]", response));
@@ -261,7 +296,7 @@ public class GoogleCalendarService {
         logger.info(String.format("Delete event [%s] on calendar [%s]", eventId, calendarId));
         final Json event = findOneEvent(calendarId, eventId, options, functionId);
         try {
-            service.events().delete(calendarId, eventId).execute();
+            execute(service.events().delete(calendarId, eventId));
             logger.info("Event deleted");
             return event;
         } catch (EndpointException e) {
@@ -273,6 +308,121 @@ public class GoogleCalendarService {
         }
     }
 
+    public Json batchCreateEvents(String calendarId, Json params, String functionId) {
+        final String defaultCalendarId = checkCalendarId(calendarId, params);
+        return executeBatch(params, functionId, (batch, event, callback) -> {
+            final String eventCalendarId = checkBatchValue("calendarId", StringUtils.defaultIfBlank(event.string("calendarId"), defaultCalendarId));
+            service.generic().post(String.format(EVENTS_URL, eventCalendarId), event).queue(batch, callback);
+        });
+    }
+
+    public Json batchUpdateEvents(String calendarId, Json params, String functionId) {
+        final String defaultCalendarId = checkCalendarId(calendarId, params);
+        return executeBatch(params, functionId, (batch, event, callback) -> {
+            final String eventCalendarId = checkBatchValue("calendarId", StringUtils.defaultIfBlank(event.string("calendarId"), defaultCalendarId));
+            final String eventId = checkBatchValue("eventId", StringUtils.defaultIfBlank(event.string("eventId"), event.string("id")));
+            service.generic().put(String.format(EVENT_URL, eventCalendarId, eventId), event).queue(batch, callback);
+        });
+    }
+
+    public Json batchDeleteEvents(String calendarId, Json params, String functionId) {
+        final String defaultCalendarId = checkCalendarId(calendarId, params);
+        return executeBatch(params, functionId, (batch, event, callback) -> {
+            final String eventCalendarId = checkBatchValue("calendarId", StringUtils.defaultIfBlank(event.string("calendarId"), defaultCalendarId));
+            final String eventId = checkBatchValue("eventId", StringUtils.defaultIfBlank(event.string("eventId"), event.string("id")));
+            service.generic().delete(String.format(EVENT_URL, eventCalendarId, eventId)).queue(batch, new JsonBatchCallback<GenericJson>() {
+                @Override
+                public void onSuccess(GenericJson json, HttpHeaders responseHeaders) throws IOException {
+                    callback.onSuccess(new GenericJson().set("calendarId", eventCalendarId).set("id", eventId), responseHeaders);
+                }
+
+                @Override
+                public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) throws IOException {
+                    callback.onFailure(error, responseHeaders);
+                }
+            });
+        });
+    }
+
+    private static String checkBatchValue(String name, String value) {
+        if (StringUtils.isBlank(value)) {
+            throw EndpointException.permanent(ErrorCode.ARGUMENT, String.format("Empty %s", name));
+        }
+        return value;
+    }
+
+    @FunctionalInterface
+    private interface BatchOperation {
+        void queue(BatchRequest batch, Json item, JsonBatchCallback<GenericJson> callback) throws IOException;
+    }
+
+    /**
+     * Sends the operations in the 'events' list through the batch endpoint of Google, at most
+     * {@value #MAX_BATCH_SIZE} operations per HTTP request. Each operation gets its own result or
+     * error in the 'results' list, in the same order than the received operations.
+     */
+    private Json executeBatch(Json params, String functionId, BatchOperation operation) {
+        final List<Json> items = params != null && params.contains("events") ? params.jsons("events") : new ArrayList<>();
+        final List<Json> results = new ArrayList<>();
+        items.forEach(item -> results.add(null));
+
+        for (int from = 0; from < items.size(); from += MAX_BATCH_SIZE) {
+            final int to = Math.min(from + MAX_BATCH_SIZE, items.size());
+            logger.info(String.format("Batch request [%s-%s] of [%s] operations", from, to - 1, items.size()));
+
+            final BatchRequest batch = service.batch().setBatchUrl(new GenericUrl(BATCH_URL));
+            for (int i = from; i < to; i++) {
+                final int index = i;
+                final Json item = items.get(i);
+                try {
+                    if (item == null || item.isEmpty()) {
+                        throw EndpointException.permanent(ErrorCode.ARGUMENT, "Empty batch operation");
+                    }
+                    operation.queue(batch, item, new JsonBatchCallback<GenericJson>() {
+                        @Override
+                        public void onSuccess(GenericJson json, HttpHeaders responseHeaders) {
+                            results.set(index, json != null ? getJson(json) : Json.map());
+                        }
+
+                        @Override
+                        public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                            results.set(index, ApiException.generate("Invalid response when try to execute the batch operation", error, true));
+                        }
+                    });
+                } catch (EndpointException e) {
+                    results.set(index, e.toJson(true));
+                } catch (Exception e) {
+                    results.set(index, processException(e));
+                }
+            }
+
+            Json batchError = null;
+            try {
+                if (batch.size() > 0) {
+                    // each operation takes its permit of the rate limit when the batch is sent
+                    batch.execute();
+                }
+            } catch (EndpointException e) {
+                batchError = e.toJson(true);
+            } catch (HttpResponseException e) {
+                batchError = processHttpResponseException(functionId, e);
+            } catch (Exception e) {
+                batchError = processException(e);
+            }
+            for (int i = from; i < to; i++) {
+                if (results.get(i) == null) {
+                    results.set(i, batchError != null ? batchError : ApiException.generate("Empty response for the batch operation", (Exception) null, true));
+                }
+            }
+        }
+
+        final long errors = results.stream().filter(result -> result.is(Parameter.EXCEPTION_FLAG)).count();
+        logger.info(String.format("Batch operations executed [%s], errors [%s]", results.size(), errors));
+        return Json.map()
+                .set("results", results)
+                .set("errors", errors);
+    }
+
     private com.google.api.services.calendar.Calendar.CalendarList.List calendarQuery(Json params) throws IOException {
         final com.google.api.services.calendar.Calendar.CalendarList.List cList = service.calendarList().list();
         if(params != null) {
@@ -285,6 +435,11 @@ public class GoogleCalendarService {
 
     private com.google.api.services.calendar.Calendar.Events.List eventsQuery(String calendarId, Json params) throws IOException {
         final com.google.api.services.calendar.Calendar.Events.List cList = service.events().list(calendarId);
+        final String defaultFields = buildEventsListFields(endpoint.getDefaultEventFields());
+        if(defaultFields != null && (params == null || StringUtils.isBlank(params.string("fields")))) {
+            // the 'fields' parameter overrides the default projection
+            cList.setFields(defaultFields);
+        }
         if(params != null) {
             for (String key : params.keys()) {
                 if ("timeMin".equals(key) || "timeMax".equals(key) || "updatedMin".equals(key)) {
@@ -297,6 +452,64 @@ public class GoogleCalendarService {
         return cList;
     }
 
+    /**
+     * Builds the projection of one event
+     *
+     * @param eventFields attributes of the event to fetch, in the format of the 'fields' parameter
+     * @return the projection including the attributes needed to process the event, or null to fetch the full event
+     */
+    public static String buildEventFields(String eventFields) {
+        if (StringUtils.isBlank(eventFields)) {
+            return null;
+        }
+        final List<String> fields = splitFields(REQUIRED_EVENT_FIELDS);
+        for (String field : splitFields(eventFields)) {
+            if (!fields.contains(field)) {
+                fields.add(field);
+            }
+        }
+        return StringUtils.join(fields, ",");
+    }
+
+    /**
+     * Builds the projection of a list of events
+     *
+     * @param eventFields attributes of the events to fetch, in the format of the 'fields' parameter
+     * @return the projection including the page and sync tokens, or null to fetch the full events
+     */
+    public static String buildEventsListFields(String eventFields) {
+        final String fields = buildEventFields(eventFields);
+        return fields != null ? String.format("nextPageToken,nextSyncToken,items(%s)", fields) : null;
+    }
+
+    /**
+     * Splits the top level attributes of a projection, like 'id,start(dateTime,date),summary'
+     */
+    private static List<String> splitFields(String fields) {
+        final List<String> result = new ArrayList<>();
+        int depth = 0;
+        final StringBuilder field = new StringBuilder();
+        for (char c : fields.toCharArray()) {
+            if (c == ',' && depth == 0) {
+                if (StringUtils.isNotBlank(field)) {
+                    result.add(field.toString().trim());
+                }
+                field.setLength(0);
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                }
+                field.append(c);
+            }
+        }
+        if (StringUtils.isNotBlank(field)) {
+            result.add(field.toString().trim());
+        }
+        return result;
+    }
+
     private Calendar fillCalendar(Json calendar) {
         final Calendar c = new Calendar();
         fillJson(c, calendar, "Calendar");
@@ -357,7 +570,7 @@ public class GoogleCalendarService {
 
     public Json getRequest(String url, String functionId) {
         try {
-            final GenericJson json = service.generic().get(url).execute();
+            final GenericJson json = execute(service.generic().get(url));
             final Json response = getJson(json);
 
             logger.info(String.format("Google response [%s]", response));
@@ -373,7 +586,7 @@ public class GoogleCalendarService {
 
     public Json postRequest(String url, Json content, String functionId) {
         try {
-            final GenericJson json = service.generic().post(url, content).execute();
+            final GenericJson json = execute(service.generic().post(url, content));
             final Json response = getJson(json);
 
             logger.info(String.format("Google response [%s]", response));
@@ -389,7 +602,7 @@ public class GoogleCalendarService {
 
     public Json putRequest(String url, Json content, String functionId) {
         try {
-            final GenericJson json = service.generic().put(url, content).execute();
+            final GenericJson json = execute(service.generic().put(url, content));
             final Json response = getJson(json);
 
             logger.info(String.format("Google response [%s]", response));
@@ -405,7 +618,7 @@ public class GoogleCalendarService {
 
     public Json patchRequest(String url, Json content, String functionId) {
         try {
-            final GenericJson json = service.generic().patch(url, content).execute();
+            final GenericJson json = execute(service.generic().patch(url, content));
             final Json response = getJson(json);
 
             logger.info(String.format("Google response [%s]", response));
@@ -421,7 +634,7 @@ public class GoogleCalendarService {
 
     public Json deleteRequest(String url, String functionId) {
         try {
-            final GenericJson json = service.generic().delete(url).execute();
+            final GenericJson json = execute(service.generic().delete(url));
             final Json response = getJson(json);
 
             logger.info(String.format("Google response [%s]", response));
@@ -435,27 +648,52 @@ public class GoogleCalendarService {
         }
     }
 
+    /**
+     * Receives the events of a synchronization page by page, so they do not have to be kept in memory
+     */
+    public interface EventsPageListener {
+        /**
+         * Called each time a page of events is fetched
+         *
+         * @param events events of the page
+         * @param checkpoint information to resume the sync from the next page, or null if it is the last page
+         */
+        void pageFetched(List<Json> events, Json checkpoint);
+    }
+
+    // fields of the sync checkpoints
+    public static final String CHECKPOINT_PAGE_TOKEN = "pageToken";
+    public static final String CHECKPOINT_QUERY_TOKEN = "queryToken";
+    public static final String CHECKPOINT_FROM = "from";
+    public static final String CHECKPOINT_UPDATED_MIN = "updatedMin";
+
     private class FullEventListBuilder {
         static final int DEFAULT_MAX_RESULTS = 2500;
         static final int MAX_ERROR_COUNT = 2;
+        static final int MAX_PAGES = 10;
 
         private final String calendarId;
         private final String query;
         private final Object from;
         private final Object to;
         private final String timezone;
+        private final Long updatedMin;
         private final String initialPageToken;
         private final String initialQueryToken;
         private final Json data;
         private int errorCount;
         private String functionId;
+        private EventsPageListener listener;
+        private String eventFields;
+        private Long recoverFrom;
 
-        FullEventListBuilder(String calendarId, String query, Object from, Object to, String timezone, String pageToken, String queryToken, Json data, String functionId) {
+        FullEventListBuilder(String calendarId, String query, Object from, Object to, String timezone, Long updatedMin, String pageToken, String queryToken, Json data, String functionId) {
             this.calendarId = calendarId;
             this.query = query;
             this.from = from;
             this.to = to;
             this.timezone = timezone;
+            this.updatedMin = updatedMin;
             this.initialPageToken = pageToken;
             this.initialQueryToken = queryToken;
             this.data = data;
@@ -467,14 +705,40 @@ public class GoogleCalendarService {
          * Full initial synchronization
          */
         FullEventListBuilder(String calendarId, String functionId) {
-            this(calendarId, null, new Date().getTime(), null, "UTC", null, null, null, functionId);
+            this(calendarId, null, new Date().getTime(), null, "UTC", null, null, null, null, functionId);
         }
 
         /**
          * Incremental synchronization
          */
         FullEventListBuilder(String calendarId, String queryToken, String functionId) {
-            this(calendarId, null, null, null, null, null, queryToken, null, functionId);
+            this(calendarId, null, null, null, null, null, null, queryToken, null, functionId);
+        }
+
+        /**
+         * Recovery of the changes since a time, including deleted events, when the sync token is not longer valid
+         */
+        FullEventListBuilder(String calendarId, long updatedMin, String functionId) {
+            this(calendarId, null, null, null, null, updatedMin, null, null, null, functionId);
+        }
+
+        /**
+         * Resumes the synchronization from a checkpoint
+         */
+        FullEventListBuilder(String calendarId, Json checkpoint, String functionId) {
+            this(calendarId, null, checkpoint.longInteger(CHECKPOINT_FROM), null, checkpoint.longInteger(CHECKPOINT_FROM) != null ? "UTC" : null,
+                    checkpoint.longInteger(CHECKPOINT_UPDATED_MIN), checkpoint.string(CHECKPOINT_PAGE_TOKEN), checkpoint.string(CHECKPOINT_QUERY_TOKEN), null, functionId);
+        }
+
+        private Json buildCheckpoint(String nextPageToken) {
+            if (StringUtils.isBlank(nextPageToken)) {
+                return null;
+            }
+            return Json.map()
+                    .set(CHECKPOINT_PAGE_TOKEN, nextPageToken)
+                    .set(CHECKPOINT_QUERY_TOKEN, initialQueryToken)
+                    .set(CHECKPOINT_FROM, from)
+                    .set(CHECKPOINT_UPDATED_MIN, updatedMin);
         }
 
         Json execute() {
@@ -489,30 +753,63 @@ public class GoogleCalendarService {
                     String pageToken = this.initialPageToken;
                     String queryToken = null;
                     Json lastInfo = null;
-                    int maxPages = 10;
+                    int pages = 0;
+                    long eventsCount = 0;
+                    boolean partial = false;
                     do {
-                        final Json partialResult = internalEventsList(calendarId, query, from, to, timezone, pageToken, DEFAULT_MAX_RESULTS, initialQueryToken, data, functionId);
+                        if (pages > 0 && Deadline.expired()) {
+                            // the time of the operation is over, the next page is not fetched
+                            partial = true;
+                            break;
+                        }
+                        final Json partialResult = internalEventsList(calendarId, query, from, to, timezone, updatedMin, pageToken, DEFAULT_MAX_RESULTS, initialQueryToken, data, buildEventsListFields(eventFields), functionId);
                         if (partialResult != null) {
+                            pageToken = partialResult.string("nextPageToken");
+                            queryToken = partialResult.string("queryToken");
                             if (partialResult.object("events") != null) {
-                                eventList.addAll(partialResult.jsons("events"));
+                                final List<Json> pageEvents = partialResult.jsons("events");
+                                if (listener != null) {
+                                    // events are streamed, only one page is kept in memory
+                                    listener.pageFetched(pageEvents, buildCheckpoint(pageToken));
+                                } else {
+                                    eventList.addAll(pageEvents);
+                                }
+                                eventsCount += pageEvents.size();
                                 processedResults = true;
                             }
                             if (partialResult.object("info") != null) {
                                 lastInfo = partialResult.json("info");
                             }
-                            pageToken = partialResult.string("nextPageToken");
-                            queryToken = partialResult.string("queryToken");
                         } else {
                             pageToken = null;
                         }
-                        maxPages--;
-                    } while (StringUtils.isNotBlank(pageToken) && maxPages>=0);
+                        pages++;
+                    } while (StringUtils.isNotBlank(pageToken) && (listener != null || pages <= MAX_PAGES));
+
+                    if (partial) {
+                        logger.info(String.format("Events of calendar [%s] stopped by the deadline after [%s] pages", calendarId, pages));
+                    } else if (StringUtils.isNotBlank(pageToken)) {
+                        logger.warn(String.format("Events of calendar [%s] truncated after [%s] pages", calendarId, pages));
+                    }
+
+                    if (processedResults && updatedMin != null && !partial && StringUtils.isBlank(queryToken) && errorCount < MAX_ERROR_COUNT) {
+                        // the changes were recovered but there is not a new sync token to continue
+                        logger.warn(String.format("Sync token not received after recovering the events of calendar [%s], starting a full sync", calendarId));
+                        return fullSync();
+                    }
 
                     if (processedResults) {
                         response.set("result", "ok");
                         response.set("events", eventList);
+                        response.set("eventsCount", eventsCount);
+                        response.set("pages", pages);
                         response.set("info", lastInfo);
                         response.set("queryToken", queryToken);
+                        if (partial) {
+                            // the sync token is only returned on the last page
+                            response.set("partial", true);
+                            response.set("nextPageToken", pageToken);
+                        }
                         return response;
                     } else {
                         logger.info("Invalid response: CalendarList.list");
@@ -535,15 +832,20 @@ public class GoogleCalendarService {
                             fullSyncRequired = true;
                         } else if (StringUtils.isNotBlank(description.string("message")) && description.string("message").contains("ync token")) {
                             fullSyncRequired = true;
+                        } else if (StringUtils.isNotBlank(initialPageToken) && StringUtils.isNotBlank(description.string("message")) && description.string("message").contains("age token")) {
+                            // the checkpoint used to resume the sync is not longer valid
+                            fullSyncRequired = true;
                         }
                     }
                 }
 
                 if(fullSyncRequired) {
+                    if (recoverFrom != null && updatedMin == null) {
+                        // only the events changed since the last sync are fetched again
+                        return recoverySync();
+                    }
                     // when there is an error, perform full synchronization
-                    FullEventListBuilder builder = new FullEventListBuilder(calendarId, functionId);
-                    builder.errorCount = this.errorCount + 1;
-                    return builder.execute();
+                    return fullSync();
                 } else {
                     return e.toJson(true);
                 }
@@ -551,9 +853,30 @@ public class GoogleCalendarService {
 
             return response;
         }
+
+        private Json recoverySync() {
+            Deadline.check("recovering the changes of the events");
+            logger.info(String.format("Recovering the events of calendar [%s] changed since [%s]", calendarId, new DateTime(recoverFrom)));
+
+            final FullEventListBuilder builder = new FullEventListBuilder(calendarId, recoverFrom, functionId);
+            builder.errorCount = this.errorCount + 1;
+            builder.listener = this.listener;
+            builder.eventFields = this.eventFields;
+            return builder.execute();
+        }
+
+        private Json fullSync() {
+            Deadline.check("starting a full sync of the events");
+
+            final FullEventListBuilder builder = new FullEventListBuilder(calendarId, functionId);
+            builder.errorCount = this.errorCount + 1;
+            builder.listener = this.listener;
+            builder.eventFields = this.eventFields;
+            return builder.execute();
+        }
     }
 
-    private Json internalEventsList(String calendarId, String query, Object from, Object to, String timezone, String pageToken, Integer maxResults, String queryToken, Json data, String functionId) throws EndpointException {
+    private Json internalEventsList(String calendarId, String query, Object from, Object to, String timezone, Long updatedMin, String pageToken, Integer maxResults, String queryToken, Json data, String fields, String functionId) throws EndpointException {
         final Json response = Json.map();
         response.set("result", "error");  // deprecated field
         response.set("calendarId", calendarId);
@@ -569,6 +892,9 @@ public class GoogleCalendarService {
             if (StringUtils.isNotBlank(pageToken)) {
                 list.setPageToken(pageToken);
             }
+            if (StringUtils.isNotBlank(fields)) {
+                list.setFields(fields);
+            }
             if (maxResults != null) {
                 list.setMaxResults(maxResults);
             }
@@ -597,11 +923,15 @@ public class GoogleCalendarService {
                         list.setTimeMax(dt);
                     }
                 }
+                if (updatedMin != null) {
+                    list.setUpdatedMin(new DateTime(updatedMin));
+                    list.setShowDeleted(true);
+                }
             }
 
             logger.info(String.format("Event list request [%s]", Json.fromMap(list).toString()));
 
-            final Events events = list.execute();
+            final Events events = execute(list);
 
             logger.info(String.format("Event list response [%s]", Json.fromMap(events).toString()));
 
@@ -643,62 +973,151 @@ public class GoogleCalendarService {
         return response;
     }
 
-    public Json findAllCalendars() {
+    /**
+     * Fetches the calendars of the user that changed since the last sync of the calendar list
+     *
+     * @param syncToken sync token of the last sync of the calendar list, or null to fetch all the calendars
+     * @return the changed calendars (with the 'id', 'deleted' and 'hidden' fields), the new sync token on 'queryToken'
+     * and the flag 'fullSync' when all the calendars were fetched, or the exception information
+     */
+    public Json syncCalendarList(String syncToken) {
         try {
-            boolean processedResults = false;
-            List<CalendarListEntry> list = new ArrayList<>();
+            final List<Json> calendars = new ArrayList<>();
             String pageToken = null;
+            String nextSyncToken = null;
             do {
                 final com.google.api.services.calendar.Calendar.CalendarList.List cList = service.calendarList().list();
+                cList.setFields(CALENDAR_LIST_SYNC_FIELDS);
+                if(StringUtils.isNotBlank(syncToken)) {
+                    cList.setSyncToken(syncToken);
+                }
                 if(StringUtils.isNotBlank(pageToken)) {
                     cList.setPageToken(pageToken);
                 }
-                final CalendarList calendarList = cList.execute();
+                final CalendarList calendarList = execute(cList);
                 if (calendarList != null) {
                     if (calendarList.getItems() != null) {
-                        list.addAll(calendarList.getItems());
-                        processedResults = true;
+                        for (CalendarListEntry entry : calendarList.getItems()) {
+                            // incremental changes include the hidden calendars, they are not synchronized
+                            calendars.add(Json.map()
+                                    .set("id", entry.getId())
+                                    .set("deleted", Boolean.TRUE.equals(entry.getDeleted()))
+                                    .set("hidden", Boolean.TRUE.equals(entry.getHidden())));
+                        }
                     }
                     pageToken = calendarList.getNextPageToken();
+                    nextSyncToken = calendarList.getNextSyncToken();
                 } else {
                     pageToken = null;
                 }
             } while (StringUtils.isNotBlank(pageToken));
 
-            if (processedResults) {
-                return Json.map()
-                        .set("calendars", list.stream()
-                                .map(Json::fromMap)
-                                .collect(Collectors.toList())
-                        );
-            } else {
-                logger.info("Invalid response: CalendarList.list");
-            }
+            return Json.map()
+                    .set("calendars", calendars)
+                    .set("queryToken", nextSyncToken)
+                    .set("fullSync", StringUtils.isBlank(syncToken));
         } catch (EndpointException e) {
             return e.toJson(true);
         } catch (HttpResponseException e) {
+            if (StringUtils.isNotBlank(syncToken) && e.getStatusCode() == 410) {
+                // A 410 status code, "Gone", indicates that the sync token is invalid
+                logger.info("Sync token of the calendar list is not longer valid, all the calendars are fetched");
+                return syncCalendarList(null);
+            }
             endpoint.checkDisconnection(userId, e, null);
             logger.info(String.format("Invalid response when try to get the calendar list [%s]", e.getContent() != null ? e.getContent() : e.getMessage()));
             return ApiException.generate("Invalid response when try to get the calendar list", e, true);
         } catch (IOException e) {
             return processException(e);
         }
-        return null;
+    }
+
+    /**
+     * Registers a channel to receive push notifications when the events of the calendar change
+     *
+     * @param calendarId calendar id
+     * @param channelId unique id of the new channel
+     * @param address URL where Google will send the notifications
+     * @param token token sent back by Google on each notification
+     * @param expiration requested expiration time of the channel
+     * @return registered channel, or the exception information
+     */
+    public Json watchEvents(String calendarId, String channelId, String address, String token, long expiration) {
+        try {
+            final Channel channel = new Channel()
+                    .setId(channelId)
+                    .setType("web_hook")
+                    .setAddress(address)
+                    .setToken(token)
+                    .setExpiration(expiration);
+
+            final Channel registeredChannel = execute(service.events().watch(calendarId, channel));
+            final Json response = getJson(registeredChannel);
+
+            logger.info(String.format("Registered channel [%s] for calendar [%s]", channelId, calendarId));
+            return response;
+        } catch (EndpointException e) {
+            return e.toJson(true);
+        } catch (HttpResponseException e) {
+            return processHttpResponseException(null, e);
+        } catch (Exception e) {
+            return processException(e);
+        }
+    }
+
+    /**
+     * Stops a push notifications channel
+     *
+     * @param channelId channel id
+     * @param resourceId resource id assigned by Google to the channel
+     */
+    public void stopChannel(String channelId, String resourceId) {
+        try {
+            execute(service.channels().stop(new Channel().setId(channelId).setResourceId(resourceId)));
+            logger.info(String.format("Stopped channel [%s]", channelId));
+        } catch (Exception e) {
+            logger.info(String.format("Channel [%s] could not be stopped [%s]", channelId, e.getMessage()));
+        }
     }
 
     public Json eventsSync(String calendarId, String queryToken, String functionId) {
+        return eventsSync(calendarId, queryToken, functionId, null, null, null, null);
+    }
+
+    /**
+     * Fetches the events changed since the last synchronization
+     *
+     * @param calendarId calendar id
+     * @param queryToken sync token of the last synchronization, or null to execute a full synchronization
+     * @param functionId function id
+     * @param listener listener that receives the events page by page, or null to return all the events on the response
+     * @param checkpoint checkpoint received by the listener on a previous sync that did not finish, or null
+     * @param eventFields attributes of the events to fetch, or null to fetch the full events
+     * @param recoverFrom time since which the changed events are fetched when the sync token is not longer
+     *                    valid, or null to execute a full synchronization in that case
+     * @return the new sync token of the calendar, or the exception information
+     */
+    public Json eventsSync(String calendarId, String queryToken, String functionId, EventsPageListener listener, Json checkpoint, String eventFields, Long recoverFrom) {
         Json response = Json.map();
         response.set("calendarId", calendarId);
 
         try {
             final FullEventListBuilder builder;
-            if(StringUtils.isBlank(queryToken)){
+            if(checkpoint != null && StringUtils.isNotBlank(checkpoint.string(CHECKPOINT_PAGE_TOKEN))
+                    && (StringUtils.isBlank(checkpoint.string(CHECKPOINT_QUERY_TOKEN)) || StringUtils.equals(queryToken, checkpoint.string(CHECKPOINT_QUERY_TOKEN)))){
+                // resume the sync that did not finish. A full sync is always resumed, because it
+                // replaces the last token even when the full sync was started after a 410 error
+                builder = new FullEventListBuilder(calendarId, checkpoint, functionId);
+            } else if(StringUtils.isBlank(queryToken)){
                 // full sync
                 builder = new FullEventListBuilder(calendarId, functionId);
             } else {
                 // perform incremental sync
                 builder = new FullEventListBuilder(calendarId, queryToken, functionId);
             }
+            builder.listener = listener;
+            builder.eventFields = eventFields;
+            builder.recoverFrom = recoverFrom;
 
             response = builder.execute();
         } catch (EndpointException e) {
@@ -3,23 +3,37 @@ package io.slingr.endpoints.googlecalendar.services;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeRequestUrl;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeTokenRequest;
 import com.google.api.client.googleapis.auth.oauth2.GoogleRefreshTokenRequest;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
 import com.google.api.client.http.*;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson.JacksonFactory;
 import io.slingr.endpoints.exceptions.EndpointException;
 import io.slingr.endpoints.exceptions.ErrorCode;
 import io.slingr.endpoints.exceptions.PermanentException;
 import io.slingr.endpoints.googlecalendar.GoogleCalendarEndpoint;
 import io.slingr.endpoints.googlecalendar.services.entities.ValidToken;
+import io.slingr.endpoints.googlecalendar.services.utils.Deadline;
+import io.slingr.endpoints.googlecalendar.services.utils.ExpiringLruCache;
+import io.slingr.endpoints.googlecalendar.services.utils.GoogleTransport;
+import io.slingr.endpoints.googlecalendar.services.utils.RequestRateLimiter;
+import io.slingr.endpoints.googlecalendar.services.utils.RequestRetryPolicy;
 import io.slingr.endpoints.utils.Json;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class GoogleClient {
 
@@ -27,15 +41,35 @@ public class GoogleClient {
 
     private static final String ACCESS_TYPE = "offline";
     private static final String RESPONSE_TYPE = "code";
-    private static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
+    private static final String TOKEN_KEY_PREFIX = "token:";
+
+    public static final int DEFAULT_SERVICES_CACHE_SIZE = 5000;
+    public static final long DEFAULT_SERVICES_CACHE_TTL = TimeUnit.MINUTES.toMillis(30);
+    private static final int FAILED_REFRESHES_CACHE_SIZE = 10000;
+    private static final long FAILED_REFRESHES_CACHE_TTL = TimeUnit.SECONDS.toMillis(30);
 
 	private final String application;
 	private final String clientId;
     private final String clientSecret;
     private final String defaultRedirectUri;
     private final List<ServiceType> services;
+    private final RequestRateLimiter rateLimiter;
+    private final RequestRetryPolicy retryPolicy;
+    private final ExpiringLruCache<String, CachedService<GoogleCalendarService>> calendarServices;
+    private final ExpiringLruCache<String, CachedService<OldGoogleCalendarService>> oldCalendarServices;
+    private final Map<String, CompletableFuture<GoogleTokenResponse>> runningRefreshes = new ConcurrentHashMap<>();
+    private final ExpiringLruCache<String, Exception> failedRefreshes = new ExpiringLruCache<>(FAILED_REFRESHES_CACHE_SIZE, FAILED_REFRESHES_CACHE_TTL);
 
 	public GoogleClient(String application, String clientId, String clientSecret, String redirectUri, ServiceType... services) {
+        this(application, clientId, clientSecret, redirectUri, DEFAULT_SERVICES_CACHE_SIZE, DEFAULT_SERVICES_CACHE_TTL, services);
+    }
+
+	public GoogleClient(String application, String clientId, String clientSecret, String redirectUri, int servicesCacheSize, long servicesCacheTtl, ServiceType... services) {
+        this(application, clientId, clientSecret, redirectUri, servicesCacheSize, servicesCacheTtl, null, null, services);
+    }
+
+	public GoogleClient(String application, String clientId, String clientSecret, String redirectUri, int servicesCacheSize, long servicesCacheTtl,
+                        RequestRateLimiter rateLimiter, RequestRetryPolicy retryPolicy, ServiceType... services) {
 		this.application = application;
 		this.clientId = clientId;
 		this.clientSecret = clientSecret;
@@ -52,6 +86,11 @@ public class GoogleClient {
                 this.services.add(ServiceType.OAUTH_2);
             }
         }
+
+        this.calendarServices = new ExpiringLruCache<>(servicesCacheSize, servicesCacheTtl);
+        this.oldCalendarServices = new ExpiringLruCache<>(servicesCacheSize, servicesCacheTtl);
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
 	}
 
     public String generateAuthURL() {
@@ -79,7 +118,7 @@ public class GoogleClient {
             error = "Invalid user code: null";
         } else {
             try {
-                final GoogleAuthorizationCodeTokenRequest request = new GoogleAuthorizationCodeTokenRequest(GoogleNetHttpTransport.newTrustedTransport(), new JacksonFactory(), clientId, clientSecret, code, StringUtils.isNotBlank(redirectUri) ? redirectUri : defaultRedirectUri);
+                final GoogleAuthorizationCodeTokenRequest request = new GoogleAuthorizationCodeTokenRequest(GoogleTransport.getHttpTransport(), GoogleTransport.getJsonFactory(), clientId, clientSecret, code, StringUtils.isNotBlank(redirectUri) ? redirectUri : defaultRedirectUri);
                 validToken = new ValidToken(request.execute());
             } catch (HttpResponseException e) {
                 error = String.format("Invalid response when try to generate code [%s]", e.getContent() != null ? e.getContent() : e.getMessage());
@@ -125,15 +164,18 @@ public class GoogleClient {
         try {
             if (validToken.isExpired()) {
                 try {
-                    final GoogleRefreshTokenRequest request = new GoogleRefreshTokenRequest(GoogleNetHttpTransport.newTrustedTransport(), new JacksonFactory(), validToken.getRefreshToken(), clientId, clientSecret);
-                    validToken.updateToken(request.execute());
-                    logger.info(String.format("Token regenerated for user [%s]", userId));
+                    validToken.updateToken(refreshToken(userId, validToken.getRefreshToken()));
                 } catch (HttpResponseException e) {
                     error = String.format("Error renewing the token [%s]", e.getContent() != null ? e.getContent() : e.getMessage());
                     errorType = ErrorCode.API;
                     if(e.getStatusCode() < 400 || e.getStatusCode() >= 500) {
                         permanentException = false;
                     }
+                } catch (IOException e) {
+                    // network errors and timeouts can work on the next try
+                    error = String.format("Error renewing the token [%s]", e.getMessage());
+                    errorType = ErrorCode.API;
+                    permanentException = false;
                 } catch (Exception e) {
                     error = String.format("Error renewing the token [%s]", e.getMessage());
                     errorType = ErrorCode.API;
@@ -151,6 +193,97 @@ public class GoogleClient {
         }
 	}
 
+    /**
+     * Generates a new access token from the refresh token. Concurrent requests over the same refresh token
+     * share the result of a single request to Google, and a refresh token rejected by Google is remembered
+     * during a short time so the following callers fail fast. Temporary failures are not remembered.
+     *
+     * @param userId user id, only used for logging
+     * @param refreshToken refresh token of the user
+     * @return token response generated by Google
+     */
+    private GoogleTokenResponse refreshToken(String userId, String refreshToken) throws IOException, GeneralSecurityException {
+        if (StringUtils.isBlank(refreshToken)) {
+            return executeRefreshToken(userId, refreshToken);
+        }
+
+        final Exception lastFailure = failedRefreshes.get(refreshToken);
+        if (lastFailure != null) {
+            logger.info(String.format("Token renewal for user [%s] failed recently, skipping request", userId));
+            throw rethrowRefreshFailure(lastFailure);
+        }
+
+        Deadline.check("renewing the token");
+        final CompletableFuture<GoogleTokenResponse> refresh = new CompletableFuture<>();
+        final CompletableFuture<GoogleTokenResponse> runningRefresh = runningRefreshes.putIfAbsent(refreshToken, refresh);
+        if (runningRefresh != null) {
+            // another thread is renewing the token, wait for its result until the deadline of the operation
+            try {
+                return Deadline.current() != null ?
+                        runningRefresh.get(Deadline.current().getRemainingTime(), TimeUnit.MILLISECONDS) :
+                        runningRefresh.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting the token renewal", e);
+            } catch (TimeoutException e) {
+                throw new IOException("Time of the operation is over while waiting the token renewal", e);
+            } catch (ExecutionException e) {
+                throw rethrowRefreshFailure(e.getCause());
+            }
+        }
+
+        try {
+            final GoogleTokenResponse response = executeRefreshToken(userId, refreshToken);
+            refresh.complete(response);
+            return response;
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            if (isPermanentRefreshFailure(e)) {
+                failedRefreshes.put(refreshToken, e);
+            }
+            refresh.completeExceptionally(e);
+            throw e;
+        } finally {
+            runningRefreshes.remove(refreshToken, refresh);
+        }
+    }
+
+    /**
+     * @param failure exception thrown by the token renewal
+     * @return true if Google rejected the refresh token (like 'invalid_grant'), so a new request would fail too
+     */
+    static boolean isPermanentRefreshFailure(Exception failure) {
+        if (failure instanceof HttpResponseException) {
+            final int statusCode = ((HttpResponseException) failure).getStatusCode();
+            return statusCode == 400 || statusCode == 401;
+        }
+        return false;
+    }
+
+    GoogleTokenResponse executeRefreshToken(String userId, String refreshToken) throws IOException, GeneralSecurityException {
+        final GoogleRefreshTokenRequest request = new GoogleRefreshTokenRequest(GoogleTransport.getHttpTransport(), GoogleTransport.getJsonFactory(), refreshToken, clientId, clientSecret);
+        if (Deadline.current() != null) {
+            // the renewal can not take longer than the time left to the operation
+            request.setRequestInitializer(httpRequest -> {
+                httpRequest.setConnectTimeout((int) Math.max(1, Deadline.remainingTime(httpRequest.getConnectTimeout())));
+                httpRequest.setReadTimeout((int) Math.max(1, Deadline.remainingTime(httpRequest.getReadTimeout())));
+            });
+        }
+        final GoogleTokenResponse response = request.execute();
+        logger.info(String.format("Token regenerated for user [%s]", userId));
+        return response;
+    }
+
+    private static IOException rethrowRefreshFailure(Throwable failure) throws GeneralSecurityException {
+        if (failure instanceof IOException) {
+            return (IOException) failure;
+        } else if (failure instanceof GeneralSecurityException) {
+            throw (GeneralSecurityException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        return new IOException(failure);
+    }
+
     public void revokeTokens(String token, String refreshToken){
         try {
             String tokenToRevoke = refreshToken;
@@ -158,7 +291,7 @@ public class GoogleClient {
                 tokenToRevoke = token;
             }
             if(StringUtils.isNotBlank(tokenToRevoke)){
-                final HttpRequestFactory factory = HTTP_TRANSPORT.createRequestFactory();
+                final HttpRequestFactory factory = GoogleTransport.getHttpTransport().createRequestFactory();
                 final GenericUrl url = new GenericUrl("https://accounts.google.com/o/oauth2/revoke?token=" + tokenToRevoke);
                 final HttpRequest request = factory.buildGetRequest(url);
                 final HttpResponse response = request.execute();
@@ -182,13 +315,73 @@ public class GoogleClient {
         if (! this.services.contains(ServiceType.CALENDAR)) {
             throw EndpointException.permanent(ErrorCode.CLIENT, "Calendar service (Calendar API) was not defined as valid service");
         }
-        return new GoogleCalendarService(userId, application, token, endpoint);
+        final String tokenHash = hashToken(token);
+        final String key = getServiceKey(userId, tokenHash);
+
+        final CachedService<GoogleCalendarService> cached = calendarServices.get(key);
+        if (cached != null && cached.tokenHash.equals(tokenHash)) {
+            return cached.service;
+        }
+        final GoogleCalendarService service = new GoogleCalendarService(userId, application, token, endpoint, rateLimiter, retryPolicy);
+        calendarServices.put(key, new CachedService<>(tokenHash, service));
+        return service;
     }
 
     public OldGoogleCalendarService getOldService(String userId, String token, GoogleCalendarEndpoint endpoint) throws PermanentException {
         if (! this.services.contains(ServiceType.CALENDAR)) {
             throw EndpointException.permanent(ErrorCode.CLIENT, "Calendar service (Calendar API) was not defined as valid service");
         }
-        return new OldGoogleCalendarService(userId, application, token, endpoint);
+        final String tokenHash = hashToken(token);
+        final String key = getServiceKey(userId, tokenHash);
+
+        final CachedService<OldGoogleCalendarService> cached = oldCalendarServices.get(key);
+        if (cached != null && cached.tokenHash.equals(tokenHash)) {
+            return cached.service;
+        }
+        final OldGoogleCalendarService service = new OldGoogleCalendarService(userId, application, token, endpoint, rateLimiter);
+        oldCalendarServices.put(key, new CachedService<>(tokenHash, service));
+        return service;
+    }
+
+    /**
+     * Removes the cached calendar services of the user
+     *
+     * @param userId user id
+     */
+    public void invalidateServices(String userId) {
+        if (StringUtils.isNotBlank(userId)) {
+            calendarServices.remove(userId);
+            oldCalendarServices.remove(userId);
+        }
+    }
+
+    private static String getServiceKey(String userId, String tokenHash) {
+        return StringUtils.isNotBlank(userId) ? userId : TOKEN_KEY_PREFIX + tokenHash;
+    }
+
+    private static String hashToken(String token) {
+        if (StringUtils.isBlank(token)) {
+            throw new IllegalArgumentException("Invalid token");
+        }
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hash = new StringBuilder();
+            for (byte b : digest) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return token;
+        }
+    }
+
+    private static class CachedService<T> {
+        private final String tokenHash;
+        private final T service;
+
+        CachedService(String tokenHash, T service) {
+            this.tokenHash = tokenHash;
+            this.service = service;
+        }
     }
 }
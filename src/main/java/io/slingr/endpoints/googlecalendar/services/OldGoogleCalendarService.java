@@ -1,10 +1,7 @@
 package io.slingr.endpoints.googlecalendar.services;
 
 import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.http.HttpResponseException;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.jackson.JacksonFactory;
 import com.google.api.client.util.DateTime;
 import com.google.api.services.calendar.model.*;
 import io.slingr.endpoints.exceptions.EndpointException;
@@ -14,6 +11,8 @@ import io.slingr.endpoints.googlecalendar.services.entities.ApiException;
 import io.slingr.endpoints.googlecalendar.services.entities.GCCalendar;
 import io.slingr.endpoints.googlecalendar.services.entities.GCEvent;
 import io.slingr.endpoints.googlecalendar.services.utils.DateTimeUtils;
+import io.slingr.endpoints.googlecalendar.services.utils.GoogleTransport;
+import io.slingr.endpoints.googlecalendar.services.utils.RequestRateLimiter;
 import io.slingr.endpoints.services.exchange.Parameter;
 import io.slingr.endpoints.utils.Json;
 import org.apache.commons.lang3.StringUtils;
@@ -37,6 +36,10 @@ public class OldGoogleCalendarService {
     private final GoogleCalendarEndpoint endpoint;
 
     public OldGoogleCalendarService(String userId, String applicationName, String token, GoogleCalendarEndpoint endpoint) {
+        this(userId, applicationName, token, endpoint, null);
+    }
+
+    public OldGoogleCalendarService(String userId, String applicationName, String token, GoogleCalendarEndpoint endpoint, RequestRateLimiter rateLimiter) {
         this.userId = userId;
         if (StringUtils.isBlank(token)) {
             throw new IllegalArgumentException("Invalid token");
@@ -47,11 +50,9 @@ public class OldGoogleCalendarService {
 
         final com.google.api.services.calendar.Calendar service;
         try {
-            final NetHttpTransport nt = GoogleNetHttpTransport.newTrustedTransport();
-            final JacksonFactory jf = new JacksonFactory();
             final GoogleCredential cd = new GoogleCredential().setAccessToken(token);
 
-            service = new com.google.api.services.calendar.Calendar.Builder(nt, jf, cd)
+            service = new com.google.api.services.calendar.Calendar.Builder(GoogleTransport.getHttpTransport(), GoogleTransport.getJsonFactory(), rateLimiter != null ? rateLimiter.wrap(userId, cd) : cd)
                     .setApplicationName(applicationName)
                     .build();
         } catch (HttpResponseException e) {
@@ -0,0 +1,199 @@
+package io.slingr.endpoints.googlecalendar.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * <p>Renews the user tokens in background some time before they expire, so the requests
+ * of the users do not have to wait for the token renewal.
+ *
+ * <p>Users are kept ordered by the time when their tokens must be renewed and the renewals
+ * are executed by a bounded pool of workers. A renewal that fails is scheduled again with an
+ * exponential backoff, so a temporary error does not leave the user out of the renewals.
+ */
+public class TokenRefreshScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRefreshScheduler.class);
+
+    public static final long DEFAULT_MARGIN = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_CONCURRENCY = 2;
+    private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(15);
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(10);
+
+    private final long margin;
+    private final int concurrency;
+    private final long checkInterval;
+    private final long retryDelay;
+    private final Predicate<String> refresher;
+    private final TreeSet<ScheduledRefresh> queue = new TreeSet<>();
+    private final Map<String, ScheduledRefresh> scheduled = new HashMap<>();
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService timer = null;
+    private ExecutorService workers = null;
+
+    /**
+     * @param margin time in milliseconds before the expiration when the token is renewed
+     * @param concurrency max number of tokens renewed at the same time
+     * @param refresher function that renews the token of the given user. It returns false when the
+     *                  renewal has to be tried again later.
+     */
+    public TokenRefreshScheduler(long margin, int concurrency, Predicate<String> refresher) {
+        this(margin, concurrency, CHECK_INTERVAL, RETRY_DELAY, refresher);
+    }
+
+    TokenRefreshScheduler(long margin, int concurrency, long checkInterval, long retryDelay, Predicate<String> refresher) {
+        this.margin = margin > 0 ? margin : DEFAULT_MARGIN;
+        this.concurrency = concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+        this.checkInterval = checkInterval > 0 ? checkInterval : CHECK_INTERVAL;
+        this.retryDelay = retryDelay > 0 ? retryDelay : RETRY_DELAY;
+        this.refresher = refresher;
+    }
+
+    public synchronized void start() {
+        if (timer == null) {
+            workers = Executors.newFixedThreadPool(concurrency);
+            timer = Executors.newSingleThreadScheduledExecutor();
+            timer.scheduleWithFixedDelay(this::dispatch, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+            logger.info(String.format("Token renewal scheduler started - margin [%s] ms, workers [%s]", margin, concurrency));
+        }
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            workers.shutdownNow();
+            timer = null;
+            workers = null;
+        }
+    }
+
+    /**
+     * Schedules (or reschedules) the renewal of the token of the user
+     *
+     * @param userId user id
+     * @param expirationTime expiration time of the current token of the user
+     */
+    public synchronized void schedule(String userId, Date expirationTime) {
+        if (StringUtils.isBlank(userId)) {
+            return;
+        }
+        if (expirationTime == null) {
+            remove(userId);
+            return;
+        }
+        add(new ScheduledRefresh(userId, expirationTime.getTime() - margin, 0));
+    }
+
+    public synchronized void remove(String userId) {
+        final ScheduledRefresh previous = scheduled.remove(userId);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    /**
+     * @param userId user id
+     * @return time when the token of the user is renewed, or null if it is not scheduled
+     */
+    public synchronized Long getRefreshTime(String userId) {
+        final ScheduledRefresh refresh = scheduled.get(userId);
+        return refresh != null ? refresh.refreshTime : null;
+    }
+
+    private void add(ScheduledRefresh refresh) {
+        final ScheduledRefresh previous = scheduled.put(refresh.userId, refresh);
+        if (previous != null) {
+            queue.remove(previous);
+        }
+        queue.add(refresh);
+    }
+
+    /**
+     * Schedules the renewal again after a failure, unless the token was scheduled again or removed meanwhile
+     */
+    private synchronized void retry(ScheduledRefresh failed) {
+        if (scheduled.containsKey(failed.userId)) {
+            return;
+        }
+        final int attempt = failed.attempt + 1;
+        final long delay = Math.min(MAX_RETRY_DELAY, retryDelay << Math.min(attempt - 1, 10));
+        add(new ScheduledRefresh(failed.userId, System.currentTimeMillis() + delay, attempt));
+        logger.info(String.format("Token renewal of user [%s] scheduled again in [%s] ms - attempt [%s]", failed.userId, delay, attempt));
+    }
+
+    private void dispatch() {
+        try {
+            final long now = System.currentTimeMillis();
+            ScheduledRefresh refresh;
+            while ((refresh = nextDue(now)) != null) {
+                final ScheduledRefresh dueRefresh = refresh;
+                final String userId = refresh.userId;
+                if (running.add(userId)) {
+                    workers.execute(() -> {
+                        boolean renewed = false;
+                        try {
+                            renewed = refresher.test(userId);
+                        } catch (Exception ex) {
+                            logger.warn(String.format("Error when try to renew the token of user [%s] [%s]", userId, ex.getMessage()), ex);
+                        } finally {
+                            running.remove(userId);
+                        }
+                        if (!renewed) {
+                            retry(dueRefresh);
+                        }
+                    });
+                } else {
+                    // the previous renewal of the user is still running
+                    retry(dueRefresh);
+                }
+            }
+        } catch (Exception ex) {
+            logger.warn(String.format("Error when try to dispatch the token renewals [%s]", ex.getMessage()), ex);
+        }
+    }
+
+    private synchronized ScheduledRefresh nextDue(long now) {
+        if (queue.isEmpty() || queue.first().refreshTime > now) {
+            return null;
+        }
+        final ScheduledRefresh refresh = queue.pollFirst();
+        scheduled.remove(refresh.userId, refresh);
+        return refresh;
+    }
+
+    private static class ScheduledRefresh implements Comparable<ScheduledRefresh> {
+        private final String userId;
+        private final long refreshTime;
+        private final int attempt;
+
+        ScheduledRefresh(String userId, long refreshTime, int attempt) {
+            this.userId = userId;
+            this.refreshTime = refreshTime;
+            this.attempt = attempt;
+        }
+
+        @Override
+        public int compareTo(ScheduledRefresh other) {
+            final int cmp = Long.compare(refreshTime, other.refreshTime);
+            return cmp != 0 ? cmp : userId.compareTo(other.userId);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.slingr.endpoints.googlecalendar.services.entities;
 
+import com.google.api.client.googleapis.json.GoogleJsonError;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.http.HttpResponseException;
 import io.slingr.endpoints.exceptions.EndpointException;
@@ -27,6 +28,25 @@ public class ApiException {
         return generate(contextMessage, ex).toJson(includeFlag);
     }
 
+    public static Json generate(String contextMessage, GoogleJsonError error, boolean includeFlag){
+        return generate(contextMessage, error).toJson(includeFlag);
+    }
+
+    public static PermanentException generate(String contextMessage, GoogleJsonError error){
+        Json additionalInfo = Json.map();
+        String description = "-";
+        String code = "-";
+        if(error != null) {
+            description = error.getMessage();
+            code = ""+error.getCode();
+            additionalInfo.set("googleException", Json.fromMap(error));
+        }
+
+        contextMessage = StringUtils.isNotBlank(contextMessage) ? contextMessage : "Google API Exception";
+        String message = String.format("%s [%s], code [%s]", contextMessage, description, code);
+        return EndpointException.permanent(ErrorCode.API, message, additionalInfo);
+    }
+
     public static PermanentException generate(String contextMessage, Exception ex){
         Json additionalInfo = Json.map();
         String description = "-";
@@ -0,0 +1,113 @@
+package io.slingr.endpoints.googlecalendar.services.entities;
+
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * <p>Watch channel registered on Google to receive push notifications when the events
+ * of a calendar change
+ */
+public class PushChannel {
+
+    public static final String KEY = "_id";
+    public static final String CHANNEL_ID = "channelId";
+    public static final String RESOURCE_ID = "resourceId";
+    public static final String USER_ID = "userId";
+    public static final String CALENDAR_ID = "calendarId";
+    public static final String EXPIRATION = "expiration";
+
+    private static final String KEY_SEPARATOR = ":";
+
+    /**
+     * Key of the channel, built from the user and the calendar. It is also sent as the channel token,
+     * so it is received on each notification.
+     */
+    private final String key;
+    private final String channelId;
+    private final String resourceId;
+    private final String userId;
+    private final String calendarId;
+    private final long expiration;
+
+    public PushChannel(String channelId, String resourceId, String userId, String calendarId, long expiration) {
+        this.key = buildKey(userId, calendarId);
+        this.channelId = channelId;
+        this.resourceId = resourceId;
+        this.userId = userId;
+        this.calendarId = calendarId;
+        this.expiration = expiration;
+    }
+
+    public static String buildKey(String userId, String calendarId) {
+        return userId + KEY_SEPARATOR + calendarId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getChannelId() {
+        return channelId;
+    }
+
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getCalendarId() {
+        return calendarId;
+    }
+
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * Checks if the channel must be renewed
+     *
+     * @param margin time in milliseconds before the expiration when the channel must be renewed
+     * @return true if the channel expires in less than the margin
+     */
+    public boolean isExpiring(long margin) {
+        return System.currentTimeMillis() + margin >= expiration;
+    }
+
+    /**
+     * Checks if a notification belongs to this channel
+     *
+     * @param channelId channel id received on the notification
+     * @param token channel token received on the notification
+     * @return true if both values match with the registered channel
+     */
+    public boolean matches(String channelId, String token) {
+        return StringUtils.isNotBlank(channelId) && channelId.equals(this.channelId) && key.equals(token);
+    }
+
+    public Json toJson() {
+        return Json.map()
+                .set(KEY, key)
+                .set(CHANNEL_ID, channelId)
+                .set(RESOURCE_ID, resourceId)
+                .set(USER_ID, userId)
+                .set(CALENDAR_ID, calendarId)
+                .set(EXPIRATION, expiration);
+    }
+
+    public static PushChannel fromJson(Json json) {
+        if (json == null || json.isEmpty() || StringUtils.isBlank(json.string(CHANNEL_ID))) {
+            return null;
+        }
+        final Long expiration = json.longInteger(EXPIRATION);
+        return new PushChannel(
+                json.string(CHANNEL_ID),
+                json.string(RESOURCE_ID),
+                json.string(USER_ID),
+                json.string(CALENDAR_ID),
+                expiration != null ? expiration : 0
+        );
+    }
+}
@@ -23,8 +23,9 @@ public class ValidToken {
     public static final String REFRESH_TOKEN = "refreshToken";
     public static final String EXPIRATION_TIME = "expirationTime";
 
-    private static final DateFormat DATE_FORMAT = new SimpleDateFormat(GoogleCalendarService.EXPIRATION_TIME_FORMAT);
-    private static final DateFormat DATE_FORMAT_2 =  new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX");
+    // date formats are not thread safe and cached tokens are formatted from many threads
+    private static final ThreadLocal<DateFormat> DATE_FORMAT = ThreadLocal.withInitial(() -> new SimpleDateFormat(GoogleCalendarService.EXPIRATION_TIME_FORMAT));
+    private static final ThreadLocal<DateFormat> DATE_FORMAT_2 = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSX"));
     private String token = null;
 	private final String refreshToken;
 	private Date expirationTime = null;
@@ -34,10 +35,10 @@ public class ValidToken {
         this.refreshToken = refreshToken;
         if(StringUtils.isNotBlank(expirationTime)) {
             try {
-                this.expirationTime = DATE_FORMAT.parse(expirationTime);
+                this.expirationTime = DATE_FORMAT.get().parse(expirationTime);
             } catch (ParseException e) {
                 try {
-                    this.expirationTime = DATE_FORMAT_2.parse(expirationTime);
+                    this.expirationTime = DATE_FORMAT_2.get().parse(expirationTime);
                 } catch (ParseException e2) {
                     e2.printStackTrace();
                 }
@@ -94,7 +95,7 @@ public class ValidToken {
         json.set(TOKEN, token);
         json.set(REFRESH_TOKEN, refreshToken);
         if(expirationTime != null) {
-            json.set(EXPIRATION_TIME, DATE_FORMAT.format(expirationTime));
+            json.set(EXPIRATION_TIME, DATE_FORMAT.get().format(expirationTime));
         }
         return json;
     }
@@ -0,0 +1,128 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Circuit breaker over the requests of one user. After several consecutive failures the circuit
+ * is opened and the requests fail right away. When the open time passes, a single probe request is
+ * allowed: if it works the circuit is closed, otherwise it is opened again for twice the time.
+ */
+public class CircuitBreaker {
+
+    public static final long MAX_OPEN_TIME = TimeUnit.MINUTES.toMillis(30);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long initialOpenTime;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openTime;
+    private long openedAt = 0;
+    private long probeStartedAt = 0;
+
+    /**
+     * @param failureThreshold consecutive failures that open the circuit
+     * @param openTime time in milliseconds that the circuit is open before the first probe
+     */
+    public CircuitBreaker(int failureThreshold, long openTime) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.initialOpenTime = Math.max(1, openTime);
+        this.openTime = this.initialOpenTime;
+    }
+
+    /**
+     * @return true if a request can be sent. When the open time has passed, the caller is the probe
+     * and it has to report the result of its request
+     */
+    public synchronized boolean tryAcquire() {
+        final long now = System.currentTimeMillis();
+        switch (state) {
+            case OPEN:
+                if (now - openedAt < openTime) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeStartedAt = now;
+                return true;
+            case HALF_OPEN:
+                // only one probe at a time, unless the probe never reported its result
+                if (now - probeStartedAt < openTime) {
+                    return false;
+                }
+                probeStartedAt = now;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return true if the requests are failing fast
+     */
+    public synchronized boolean isOpen() {
+        final long now = System.currentTimeMillis();
+        return (state == State.OPEN && now - openedAt < openTime) ||
+                (state == State.HALF_OPEN && now - probeStartedAt < openTime);
+    }
+
+    /**
+     * The request reached Google and it was processed
+     */
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        openTime = initialOpenTime;
+    }
+
+    /**
+     * The request failed because of the account of the user or a repeated error on Google
+     */
+    public synchronized void recordFailure() {
+        final long now = System.currentTimeMillis();
+        if (state == State.HALF_OPEN) {
+            // the probe failed
+            openTime = Math.min(MAX_OPEN_TIME, openTime * 2);
+            state = State.OPEN;
+            openedAt = now;
+        } else if (state == State.CLOSED && ++failures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+        }
+    }
+
+    /**
+     * The request was not sent or its result says nothing about the health of the account, so a new
+     * probe can be sent
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            probeStartedAt = 0;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return time in milliseconds until the next probe
+     */
+    public synchronized long getRemainingOpenTime() {
+        final long now = System.currentTimeMillis();
+        if (state == State.OPEN) {
+            return Math.max(0, openedAt + openTime - now);
+        } else if (state == State.HALF_OPEN) {
+            return Math.max(0, probeStartedAt + openTime - now);
+        }
+        return 0;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+}
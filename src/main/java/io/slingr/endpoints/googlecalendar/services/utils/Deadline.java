@@ -0,0 +1,152 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * <p>Time limit and retry budget of an operation that can send many requests to Google, like a
+ * function invocation or the sync of a user.
+ *
+ * <p>The deadline of the running operation is kept by thread, so the requests, retries and page
+ * loops of the services check it without receiving it as a parameter. Operations set it with
+ * {@link #call(Deadline, Supplier)}, which removes it when they finish, so pooled threads do not
+ * carry it to the next operation. Tasks executed on other threads have to run with the deadline of
+ * the operation that started them.
+ */
+public class Deadline {
+
+    public static final int DEFAULT_RETRY_BUDGET = 10;
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long expiration;
+    private final AtomicInteger retryBudget;
+
+    private Deadline(long expiration, int retryBudget) {
+        this.expiration = expiration;
+        this.retryBudget = new AtomicInteger(retryBudget);
+    }
+
+    /**
+     * @param timeout time in milliseconds of the operation
+     * @return a deadline with the default retry budget
+     */
+    public static Deadline after(long timeout) {
+        return after(timeout, DEFAULT_RETRY_BUDGET);
+    }
+
+    /**
+     * @param timeout time in milliseconds of the operation
+     * @param retryBudget max number of retries of all the requests of the operation
+     * @return a new deadline
+     */
+    public static Deadline after(long timeout, int retryBudget) {
+        return new Deadline(System.currentTimeMillis() + Math.max(0, timeout), Math.max(0, retryBudget));
+    }
+
+    /**
+     * @return deadline of the operation running on the current thread, or null if there is no limit
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Executes the operation with the deadline, restoring the previous one when it finishes
+     *
+     * @param deadline deadline of the operation, or null to execute it without limit
+     * @param operation operation to execute
+     * @param <T> type of the result
+     * @return the result of the operation
+     */
+    public static <T> T call(Deadline deadline, Supplier<T> operation) {
+        final Deadline previous = CURRENT.get();
+        if (deadline != null) {
+            CURRENT.set(deadline);
+        } else {
+            CURRENT.remove();
+        }
+        try {
+            return operation.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /**
+     * Executes the operation with the deadline, restoring the previous one when it finishes
+     *
+     * @param deadline deadline of the operation, or null to execute it without limit
+     * @param operation operation to execute
+     */
+    public static void run(Deadline deadline, Runnable operation) {
+        call(deadline, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return true if the operation running on the current thread is over its deadline
+     */
+    public static boolean expired() {
+        final Deadline deadline = CURRENT.get();
+        return deadline != null && deadline.isExpired();
+    }
+
+    /**
+     * @param max max time in milliseconds
+     * @return the remaining time of the current operation, limited to the max time
+     */
+    public static long remainingTime(long max) {
+        final Deadline deadline = CURRENT.get();
+        return deadline != null ? Math.min(max, deadline.getRemainingTime()) : max;
+    }
+
+    /**
+     * Stops the current operation if it is over its deadline
+     *
+     * @param step description of the step that was going to be executed
+     * @throws EndpointException retryable exception if the deadline passed
+     */
+    public static void check(String step) throws EndpointException {
+        if (expired()) {
+            throw EndpointException.retryable(ErrorCode.API, String.format("Time of the operation is over before %s", step));
+        }
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiration;
+    }
+
+    /**
+     * @return time in milliseconds until the deadline, or 0 if it passed
+     */
+    public long getRemainingTime() {
+        return Math.max(0, expiration - System.currentTimeMillis());
+    }
+
+    /**
+     * Takes a retry from the budget of the operation
+     *
+     * @param delay time in milliseconds to wait before the retry
+     * @return true if the retry can be done: there is budget and it starts before the deadline
+     */
+    public boolean tryRetry(long delay) {
+        if (delay >= getRemainingTime()) {
+            return false;
+        }
+        return retryBudget.getAndUpdate(budget -> budget > 0 ? budget - 1 : 0) > 0;
+    }
+
+    public int getRetryBudget() {
+        return retryBudget.get();
+    }
+}
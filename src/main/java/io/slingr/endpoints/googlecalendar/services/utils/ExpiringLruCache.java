@@ -0,0 +1,104 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Thread safe cache bounded by size (least recently used entries are evicted first)
+ * and by time (entries expire after a fixed time since they were stored).
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxSize;
+    private final long timeToLive;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * @param maxSize max number of entries kept in the cache
+     * @param timeToLive time in milliseconds that an entry is valid. Zero or negative values disable the expiration
+     */
+    public ExpiringLruCache(int maxSize, long timeToLive) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be greater than zero");
+        }
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > ExpiringLruCache.this.maxSize;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(timeToLive)) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (value == null) {
+            entries.remove(key);
+        } else {
+            entries.put(key, new Entry<>(value));
+        }
+    }
+
+    public synchronized V remove(K key) {
+        final Entry<V> entry = entries.remove(key);
+        return entry != null ? entry.value : null;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Removes the expired entries
+     */
+    public synchronized void purge() {
+        final Iterator<Entry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isExpired(timeToLive)) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long created;
+
+        Entry(V value) {
+            this.value = value;
+            this.created = System.currentTimeMillis();
+        }
+
+        boolean isExpired(long timeToLive) {
+            return timeToLive > 0 && System.currentTimeMillis() - created >= timeToLive;
+        }
+    }
+}
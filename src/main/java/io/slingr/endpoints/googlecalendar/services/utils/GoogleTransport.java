@@ -0,0 +1,74 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.jackson.JacksonFactory;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * <p>Process-wide HTTP transport and JSON factory shared by every Google client built by the endpoint.
+ *
+ * <p>The trusted key store is loaded only once and, as all the requests go through the same transport,
+ * the keep-alive connections of the JVM pool are reused between calendar, OAuth2 and token requests.
+ */
+public class GoogleTransport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+
+    private static final String PROPERTY_KEEP_ALIVE = "http.keepAlive";
+    private static final String PROPERTY_MAX_CONNECTIONS = "http.maxConnections";
+
+    private static volatile NetHttpTransport httpTransport = null;
+
+    private GoogleTransport() {
+    }
+
+    /**
+     * Returns the shared trusted transport, building it on the first call
+     *
+     * @return shared HTTP transport
+     * @throws GeneralSecurityException when the Google trusted key store can not be loaded
+     * @throws IOException when the Google trusted key store can not be read
+     */
+    public static NetHttpTransport getHttpTransport() throws GeneralSecurityException, IOException {
+        NetHttpTransport transport = httpTransport;
+        if (transport == null) {
+            synchronized (GoogleTransport.class) {
+                transport = httpTransport;
+                if (transport == null) {
+                    configureConnectionPool(DEFAULT_MAX_CONNECTIONS);
+                    transport = GoogleNetHttpTransport.newTrustedTransport();
+                    httpTransport = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Returns the shared JSON factory
+     *
+     * @return shared JSON factory
+     */
+    public static JacksonFactory getJsonFactory() {
+        return JacksonFactory.getDefaultInstance();
+    }
+
+    /**
+     * Enables keep-alive on the JVM connection pool used by the transport and sets the number of idle
+     * connections kept per destination, unless they were already defined as system properties
+     *
+     * @param maxConnections max number of idle connections kept per destination
+     */
+    public static void configureConnectionPool(int maxConnections) {
+        if (StringUtils.isBlank(System.getProperty(PROPERTY_KEEP_ALIVE))) {
+            System.setProperty(PROPERTY_KEEP_ALIVE, "true");
+        }
+        if (StringUtils.isBlank(System.getProperty(PROPERTY_MAX_CONNECTIONS)) && maxConnections > 0) {
+            System.setProperty(PROPERTY_MAX_CONNECTIONS, String.valueOf(maxConnections));
+        }
+    }
+}
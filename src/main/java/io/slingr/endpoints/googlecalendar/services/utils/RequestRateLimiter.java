@@ -0,0 +1,167 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequestInitializer;
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Limits the requests sent to the Google API, per user and for the whole project, so a large sync
+ * cycle or a bulk job of the application does not use up the quota of the project.
+ *
+ * <p>Requests that exceed the budget wait until there is a free permit. If the wait would be longer
+ * than the max wait or than the deadline of the operation, the request fails with a retryable error
+ * without being sent.
+ *
+ * <p>When Google rejects requests because of its rate limits, the limits are slowed down and then
+ * restored step by step.
+ */
+public class RequestRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestRateLimiter.class);
+
+    public static final long DEFAULT_USER_RATE = 10;
+    public static final long DEFAULT_PROJECT_RATE = 100;
+    public static final long DEFAULT_MAX_WAIT = TimeUnit.SECONDS.toMillis(30);
+
+    private static final int USERS_CACHE_SIZE = 10000;
+    private static final long USERS_CACHE_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private final double userRate;
+    private final long maxWait;
+    private final TokenBucket projectBucket;
+    private final ExpiringLruCache<String, TokenBucket> userBuckets = new ExpiringLruCache<>(USERS_CACHE_SIZE, USERS_CACHE_TTL);
+
+    /**
+     * @param userRate max requests per second of each user
+     * @param projectRate max requests per second of all the users
+     * @param maxWait max time in milliseconds that a request waits for a permit
+     */
+    public RequestRateLimiter(double userRate, double projectRate, long maxWait) {
+        this.userRate = userRate > 0 ? userRate : DEFAULT_USER_RATE;
+        this.projectBucket = new TokenBucket(projectRate > 0 ? projectRate : DEFAULT_PROJECT_RATE);
+        this.maxWait = maxWait >= 0 ? maxWait : DEFAULT_MAX_WAIT;
+    }
+
+    /**
+     * Waits until the user and the project have budget for one more request
+     *
+     * @param userId user id
+     * @throws EndpointException retryable exception if there is no budget in time
+     */
+    public void acquire(String userId) throws EndpointException {
+        acquire(userId, 1);
+    }
+
+    /**
+     * Waits until the user and the project have budget for several requests, like the operations
+     * of a batch request that are sent together
+     *
+     * @param userId user id
+     * @param permits number of requests
+     * @throws EndpointException retryable exception if there is no budget in time
+     */
+    public void acquire(String userId, int permits) throws EndpointException {
+        if (permits <= 0) {
+            return;
+        }
+        // requests do not wait past the deadline of the operation
+        final long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Deadline.remainingTime(maxWait));
+        final TokenBucket userBucket = getUserBucket(userId);
+
+        final long userWait = userBucket.reserve(permits, maxWaitNanos);
+        if (userWait < 0) {
+            throw exceeded(String.format("Rate limit of user [%s] exceeded", userId));
+        }
+        final long projectWait = projectBucket.reserve(permits, maxWaitNanos);
+        if (projectWait < 0) {
+            userBucket.release(permits);
+            throw exceeded("Rate limit of the project exceeded");
+        }
+
+        final long wait = Math.max(userWait, projectWait);
+        if (wait > 0) {
+            logger.debug(String.format("Request of user [%s] delayed [%s] ms by the rate limit", userId, TimeUnit.NANOSECONDS.toMillis(wait)));
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw exceeded("Interrupted while waiting the rate limit");
+            }
+        }
+    }
+
+    /**
+     * Wraps the initializer of the requests of a user, so every request waits for a permit before
+     * being sent. Retries of the same request take a new permit. The operations of a batch request
+     * take one permit each, because the batch runs the interceptor of each operation when it is sent.
+     *
+     * @param userId user id
+     * @param initializer original initializer, like the user credential
+     * @return initializer that applies the limits
+     */
+    public HttpRequestInitializer wrap(String userId, HttpRequestInitializer initializer) {
+        return request -> {
+            if (initializer != null) {
+                initializer.initialize(request);
+            }
+            final HttpExecuteInterceptor interceptor = request.getInterceptor();
+            request.setInterceptor(httpRequest -> {
+                Deadline.check("sending a request to Google");
+                acquire(userId);
+                if (Deadline.current() != null) {
+                    // the request can not take longer than the time left to the operation
+                    httpRequest.setConnectTimeout((int) Math.max(1, Deadline.remainingTime(httpRequest.getConnectTimeout())));
+                    httpRequest.setReadTimeout((int) Math.max(1, Deadline.remainingTime(httpRequest.getReadTimeout())));
+                }
+                if (interceptor != null) {
+                    interceptor.intercept(httpRequest);
+                }
+            });
+        };
+    }
+
+    /**
+     * Slows down the requests after Google rejected a request because of the rate limits
+     *
+     * @param userId user that exceeded its limit, or null if the limit of the project was exceeded
+     */
+    public void slowDown(String userId) {
+        final TokenBucket bucket = userId != null ? getUserBucket(userId) : projectBucket;
+        bucket.slowDown();
+        logger.info(String.format("Rate limit of %s slowed down to [%.2f] requests per second",
+                userId != null ? "user [" + userId + "]" : "the project", bucket.getRate()));
+    }
+
+    public double getProjectRate() {
+        return projectBucket.getRate();
+    }
+
+    public double getUserRate() {
+        return userRate;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    private TokenBucket getUserBucket(String userId) {
+        final String key = userId != null ? userId : "";
+        synchronized (userBuckets) {
+            TokenBucket bucket = userBuckets.get(key);
+            if (bucket == null) {
+                bucket = new TokenBucket(userRate);
+                userBuckets.put(key, bucket);
+            }
+            return bucket;
+        }
+    }
+
+    private static EndpointException exceeded(String message) {
+        return EndpointException.retryable(ErrorCode.API, message);
+    }
+}
@@ -0,0 +1,207 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.http.HttpMethods;
+import com.google.api.client.http.HttpResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Retries the requests rejected by Google because of the rate limits or because of temporary
+ * errors, waiting an exponential time with jitter between retries so the users that hit the limit
+ * at the same time do not retry at the same time.
+ *
+ * <p>When Google rejects a request because of the rate limits, the rate limiter is told to slow
+ * down, so the load is adjusted to the quota instead of failing for every user.
+ *
+ * <p>Requests of users with an open circuit are not sent, and the final result of each request is
+ * recorded on the circuit breaker of the user.
+ */
+public class RequestRetryPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestRetryPolicy.class);
+
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final long DEFAULT_INITIAL_DELAY = TimeUnit.SECONDS.toMillis(1);
+    public static final long DEFAULT_MAX_DELAY = TimeUnit.SECONDS.toMillis(32);
+
+    // reasons sent by Google on the errors
+    public static final String REASON_RATE_LIMIT = "rateLimitExceeded";
+    public static final String REASON_USER_RATE_LIMIT = "userRateLimitExceeded";
+
+    private static final int STATUS_FORBIDDEN = 403;
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+    private static final int STATUS_SERVER_ERROR = 500;
+
+    /**
+     * Kind of errors that can be retried
+     */
+    public enum Failure {
+        // the request exceeded the limit of the user
+        USER_RATE_LIMIT,
+        // the request exceeded the limit of the project
+        RATE_LIMIT,
+        // temporary error on Google
+        SERVER_ERROR
+    }
+
+    private final RequestRateLimiter rateLimiter;
+    private final UserCircuitBreakers circuitBreakers;
+    private final int maxRetries;
+    private final long initialDelay;
+    private final long maxDelay;
+
+    /**
+     * @param rateLimiter limiter that is slowed down when Google rejects requests, or null
+     * @param maxRetries max number of retries of each request
+     */
+    public RequestRetryPolicy(RequestRateLimiter rateLimiter, int maxRetries) {
+        this(rateLimiter, null, maxRetries, DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param rateLimiter limiter that is slowed down when Google rejects requests, or null
+     * @param circuitBreakers circuit breakers of the users, or null
+     * @param maxRetries max number of retries of each request
+     */
+    public RequestRetryPolicy(RequestRateLimiter rateLimiter, UserCircuitBreakers circuitBreakers, int maxRetries) {
+        this(rateLimiter, circuitBreakers, maxRetries, DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    public RequestRetryPolicy(RequestRateLimiter rateLimiter, UserCircuitBreakers circuitBreakers, int maxRetries, long initialDelay, long maxDelay) {
+        this.rateLimiter = rateLimiter;
+        this.circuitBreakers = circuitBreakers;
+        this.maxRetries = maxRetries >= 0 ? maxRetries : DEFAULT_MAX_RETRIES;
+        this.initialDelay = initialDelay > 0 ? initialDelay : DEFAULT_INITIAL_DELAY;
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+    }
+
+    /**
+     * Executes the request, retrying it while it fails with errors that can be retried
+     *
+     * @param userId user id
+     * @param request request to execute
+     * @param <T> type of the response
+     * @return the response of the request
+     * @throws IOException the error of the last attempt
+     */
+    public <T> T execute(String userId, AbstractGoogleClientRequest<T> request) throws IOException {
+        if (circuitBreakers == null) {
+            return executeWithRetries(userId, request);
+        }
+        circuitBreakers.acquire(userId);
+        boolean recorded = false;
+        try {
+            final T response = executeWithRetries(userId, request);
+            circuitBreakers.recordSuccess(userId);
+            recorded = true;
+            return response;
+        } catch (HttpResponseException ex) {
+            circuitBreakers.recordFailure(userId, ex);
+            recorded = true;
+            throw ex;
+        } finally {
+            if (!recorded) {
+                // the request was not sent or it failed on the network
+                circuitBreakers.release(userId);
+            }
+        }
+    }
+
+    private <T> T executeWithRetries(String userId, AbstractGoogleClientRequest<T> request) throws IOException {
+        int retries = 0;
+        while (true) {
+            Deadline.check("sending a request to Google");
+            try {
+                return request.execute();
+            } catch (HttpResponseException ex) {
+                final Failure failure = classify(request.getRequestMethod(), ex);
+                if (failure == null || retries >= maxRetries) {
+                    throw ex;
+                }
+                if (rateLimiter != null) {
+                    if (failure == Failure.USER_RATE_LIMIT) {
+                        rateLimiter.slowDown(userId);
+                    } else if (failure == Failure.RATE_LIMIT) {
+                        rateLimiter.slowDown(null);
+                    }
+                }
+
+                final long delay = getDelay(retries++);
+                final Deadline deadline = Deadline.current();
+                if (deadline != null && !deadline.tryRetry(delay)) {
+                    // the operation does not have time or retries left
+                    logger.info(String.format("Request [%s] of user [%s] failed [%s - %s], no retries left for the operation",
+                            request.getRequestMethod(), userId, ex.getStatusCode(), failure));
+                    throw ex;
+                }
+                logger.info(String.format("Request [%s] of user [%s] failed [%s - %s], retry [%s/%s] in [%s] ms",
+                        request.getRequestMethod(), userId, ex.getStatusCode(), failure, retries, maxRetries, delay));
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param retry number of retry, starting from 0
+     * @return time to wait in milliseconds: the exponential delay, half of it random
+     */
+    public long getDelay(int retry) {
+        final long delay = Math.min(maxDelay, initialDelay << Math.min(retry, 30));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @param method HTTP method of the request
+     * @param ex error returned by Google
+     * @return the kind of error, or null if the request should not be retried
+     */
+    public static Failure classify(String method, HttpResponseException ex) {
+        final int status = ex.getStatusCode();
+        final String reason = getReason(ex);
+        if (REASON_USER_RATE_LIMIT.equals(reason) && (status == STATUS_FORBIDDEN || status == STATUS_TOO_MANY_REQUESTS)) {
+            return Failure.USER_RATE_LIMIT;
+        }
+        if (status == STATUS_TOO_MANY_REQUESTS || (status == STATUS_FORBIDDEN && REASON_RATE_LIMIT.equals(reason))) {
+            return Failure.RATE_LIMIT;
+        }
+        // a creation could be applied even when it fails, so it is not sent again
+        if (status >= STATUS_SERVER_ERROR && !HttpMethods.POST.equals(method)) {
+            return Failure.SERVER_ERROR;
+        }
+        return null;
+    }
+
+    private static String getReason(HttpResponseException ex) {
+        if (ex instanceof GoogleJsonResponseException) {
+            final GoogleJsonError details = ((GoogleJsonResponseException) ex).getDetails();
+            if (details != null && details.getErrors() != null && !details.getErrors().isEmpty()) {
+                return details.getErrors().get(0).getReason();
+            }
+        }
+        final String content = ex.getContent();
+        if (content != null) {
+            if (content.contains(REASON_USER_RATE_LIMIT)) {
+                return REASON_USER_RATE_LIMIT;
+            } else if (content.contains(REASON_RATE_LIMIT)) {
+                return REASON_RATE_LIMIT;
+            }
+        }
+        return null;
+    }
+}
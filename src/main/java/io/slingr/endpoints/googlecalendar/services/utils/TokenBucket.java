@@ -0,0 +1,131 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Token bucket that limits the number of requests per second. The bucket holds up to one second
+ * of requests, so short bursts are allowed, and permits are reserved in advance: callers get the
+ * time they have to wait before sending their request.
+ *
+ * <p>The rate can be slowed down when the server rejects requests. It goes back to the configured
+ * rate step by step while there are no more rejections.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public static final double SLOW_DOWN_FACTOR = 0.5;
+    public static final double MIN_RATE_FACTOR = 0.1;
+    public static final double RECOVERY_STEP = 0.1;
+    public static final long RECOVERY_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    private final double maxRate;
+    private long lastAdjustment;
+    private double rate;
+    private double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param rate permits per second
+     */
+    public TokenBucket(double rate) {
+        setRate(rate);
+        this.maxRate = rate;
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+        this.lastAdjustment = this.lastRefill;
+    }
+
+    /**
+     * Reserves a permit
+     *
+     * @param maxWait max time in nanoseconds that the caller can wait for the permit
+     * @return time in nanoseconds to wait before using the permit, or -1 if the permit would not be
+     * available in time and nothing was reserved
+     */
+    public long reserve(long maxWait) {
+        return reserve(1, maxWait);
+    }
+
+    /**
+     * Reserves several permits at once, like the operations of a batch request
+     *
+     * @param permits number of permits
+     * @param maxWait max time in nanoseconds that the caller can wait for the permits
+     * @return time in nanoseconds to wait before using the permits, or -1 if the permits would not be
+     * available in time and nothing was reserved
+     */
+    public synchronized long reserve(int permits, long maxWait) {
+        recover();
+        refill();
+        if (tokens >= permits) {
+            tokens -= permits;
+            return 0;
+        }
+        final long wait = (long) Math.ceil((permits - tokens) / rate * NANOS_PER_SECOND);
+        if (wait > maxWait) {
+            return -1;
+        }
+        // the permits are taken from the future, so the next callers wait after this one
+        tokens -= permits;
+        return wait;
+    }
+
+    /**
+     * Returns a reserved permit that was not used
+     */
+    public void release() {
+        release(1);
+    }
+
+    /**
+     * Returns reserved permits that were not used
+     *
+     * @param permits number of permits
+     */
+    public synchronized void release(int permits) {
+        tokens = Math.min(capacity, tokens + permits);
+    }
+
+    /**
+     * Reduces the rate after a rejection of the server, down to a fraction of the configured rate
+     */
+    public synchronized void slowDown() {
+        setRate(Math.max(maxRate * MIN_RATE_FACTOR, rate * SLOW_DOWN_FACTOR));
+        lastAdjustment = System.nanoTime();
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * @param rate new permits per second
+     */
+    public synchronized void setRate(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid rate [%s]", rate));
+        }
+        if (this.rate > 0) {
+            refill();
+        }
+        this.rate = rate;
+        this.capacity = Math.max(1, rate);
+        this.tokens = Math.min(this.tokens, this.capacity);
+    }
+
+    private void recover() {
+        final long now = System.nanoTime();
+        if (rate < maxRate && now - lastAdjustment >= RECOVERY_INTERVAL) {
+            setRate(Math.min(maxRate, rate + maxRate * RECOVERY_STEP));
+            lastAdjustment = now;
+        }
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / NANOS_PER_SECOND);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,162 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import com.google.api.client.http.HttpResponseException;
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.exceptions.ErrorCode;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Circuit breakers of the users. Users whose token was revoked or whose requests keep failing on
+ * Google fail right away, without refreshing the token or sending the requests, until a probe
+ * request works again.
+ *
+ * <p>Only the users with recent failures have a circuit breaker.
+ */
+public class UserCircuitBreakers {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserCircuitBreakers.class);
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_TIME = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int STATUS_UNAUTHORIZED = 401;
+    private static final int STATUS_SERVER_ERROR = 500;
+
+    private final int failureThreshold;
+    private final long openTime;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * @param failureThreshold consecutive failures that open the circuit of a user
+     * @param openTime time in milliseconds that the circuit is open before the first probe
+     */
+    public UserCircuitBreakers(int failureThreshold, long openTime) {
+        this.failureThreshold = failureThreshold > 0 ? failureThreshold : DEFAULT_FAILURE_THRESHOLD;
+        this.openTime = openTime > 0 ? openTime : DEFAULT_OPEN_TIME;
+    }
+
+    /**
+     * Checks that a request of the user can be sent
+     *
+     * @param userId user id
+     * @throws EndpointException retryable exception if the circuit of the user is open
+     */
+    public void acquire(String userId) throws EndpointException {
+        final CircuitBreaker breaker = get(userId);
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw openCircuit(userId, breaker);
+        }
+    }
+
+    /**
+     * Fails right away if the circuit of the user is open. It does not take the probe.
+     *
+     * @param userId user id
+     * @throws EndpointException retryable exception if the circuit of the user is open
+     */
+    public void check(String userId) throws EndpointException {
+        final CircuitBreaker breaker = get(userId);
+        if (breaker != null && breaker.isOpen()) {
+            throw openCircuit(userId, breaker);
+        }
+    }
+
+    /**
+     * @param userId user id
+     * @return true if the requests of the user are failing fast
+     */
+    public boolean isOpen(String userId) {
+        final CircuitBreaker breaker = get(userId);
+        return breaker != null && breaker.isOpen();
+    }
+
+    /**
+     * The request of the user reached Google and it was processed
+     *
+     * @param userId user id
+     */
+    public void recordSuccess(String userId) {
+        final CircuitBreaker breaker = get(userId);
+        if (breaker != null) {
+            if (breaker.getState() != CircuitBreaker.State.CLOSED) {
+                logger.info(String.format("Circuit of user [%s] closed", userId));
+            }
+            breaker.recordSuccess();
+            breakers.remove(userId, breaker);
+        }
+    }
+
+    /**
+     * Records the result of a failed request of the user
+     *
+     * @param userId user id
+     * @param ex error returned by Google
+     */
+    public void recordFailure(String userId, HttpResponseException ex) {
+        if (StringUtils.isBlank(userId)) {
+            return;
+        }
+        if (!isFailure(ex)) {
+            // Google processed the request, the account is working
+            recordSuccess(userId);
+            return;
+        }
+        final CircuitBreaker breaker = breakers.computeIfAbsent(userId, id -> new CircuitBreaker(failureThreshold, openTime));
+        final boolean wasOpen = breaker.getState() != CircuitBreaker.State.CLOSED;
+        breaker.recordFailure();
+        if (breaker.getState() == CircuitBreaker.State.OPEN) {
+            logger.info(String.format("Circuit of user [%s] %s for [%s] ms after error [%s]",
+                    userId, wasOpen ? "opened again" : "opened", breaker.getRemainingOpenTime(), ex.getStatusCode()));
+        }
+    }
+
+    /**
+     * The request of the user was not sent or it failed for a reason not related to the user
+     *
+     * @param userId user id
+     */
+    public void release(String userId) {
+        final CircuitBreaker breaker = get(userId);
+        if (breaker != null) {
+            breaker.release();
+        }
+    }
+
+    /**
+     * Forgets the failures of the user, like when the user connects again
+     *
+     * @param userId user id
+     */
+    public void reset(String userId) {
+        if (StringUtils.isNotBlank(userId)) {
+            breakers.remove(userId);
+        }
+    }
+
+    public int getOpenCircuits() {
+        return (int) breakers.values().stream().filter(CircuitBreaker::isOpen).count();
+    }
+
+    /**
+     * @param ex error returned by Google
+     * @return true if the error shows a problem with the account of the user or with Google
+     */
+    public static boolean isFailure(HttpResponseException ex) {
+        return ex.getStatusCode() == STATUS_UNAUTHORIZED || ex.getStatusCode() >= STATUS_SERVER_ERROR;
+    }
+
+    private CircuitBreaker get(String userId) {
+        return StringUtils.isNotBlank(userId) ? breakers.get(userId) : null;
+    }
+
+    private static EndpointException openCircuit(String userId, CircuitBreaker breaker) {
+        return EndpointException.retryable(ErrorCode.API, String.format("Requests of user [%s] to Google are suspended after repeated failures, try again in [%s] seconds",
+                userId, Math.max(1, TimeUnit.MILLISECONDS.toSeconds(breaker.getRemainingOpenTime()))));
+    }
+}
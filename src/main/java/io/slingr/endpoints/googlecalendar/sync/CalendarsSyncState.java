@@ -0,0 +1,396 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.utils.Json;
+import io.slingr.endpoints.utils.MapsUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Sync information of the calendars of one user, stored on the 'cal_sync' data store.
+ *
+ * <p>Besides the sync token of each calendar it keeps the checkpoint of the calendars whose
+ * sync did not finish, so the next sync resumes from the last processed page instead of
+ * fetching all the pages again.
+ *
+ * <p>It also keeps when each calendar changed for the last time. Calendars without changes are
+ * synchronized less often, doubling the interval after each sync without changes up to a
+ * max interval, while calendars with changes are synchronized on each sync cycle.
+ *
+ * <p>The calendar list of the user is kept too, and it is updated with the changes fetched
+ * with the sync token of the calendar list.
+ *
+ * <p>When the sync token of a calendar expires, only the events changed since the last sync of
+ * the calendar are fetched again, so the time of each sync is kept on its schedule.
+ *
+ * <p>Saves of the polling keep the replica that wrote them, so a replica that takes a user after a
+ * rebalance does not synchronize it while the previous replica may still be saving its sync. Saves
+ * of pushed calendars keep the stored replica, because they run on any replica.
+ */
+public class CalendarsSyncState {
+
+    public static final String ID = "_id";
+    public static final String CALENDARS = "calendars";
+    public static final String CHECKPOINTS = "checkpoints";
+    public static final String LAST_SYNC = "last_sync";
+    public static final String SCHEDULES = "schedules";
+    public static final String CALENDAR_LIST = "calendarList";
+    public static final String CALENDAR_LIST_TOKEN = "calendarListToken";
+    public static final String REPLICA = "replica";
+    public static final String SAVED_AT = "savedAt";
+
+    // fields of the schedule of a calendar
+    public static final String LAST_CHANGE = "lastChange";
+    public static final String INTERVAL = "interval";
+    public static final String NEXT_SYNC = "nextSync";
+    public static final String SYNCED_AT = "syncedAt";
+
+    // the changes are recovered a bit earlier than the last sync, because of the events changed
+    // while the last page was delivered and the clock differences with Google
+    public static final long RECOVERY_MARGIN = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<String, String> lastTokens = new ConcurrentHashMap<>();
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+    private final Map<String, Json> checkpoints = new ConcurrentHashMap<>();
+    private final Map<String, Json> schedules = new ConcurrentHashMap<>();
+    private final Set<String> syncedCalendars = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> calendarList = new ConcurrentHashMap<>();
+    private volatile String calendarListToken;
+    private final Long lastSync;
+    private String replica;
+    private Long savedAt;
+    private volatile String pollingReplica;
+
+    private CalendarsSyncState(Long lastSync) {
+        this.lastSync = lastSync;
+    }
+
+    /**
+     * Restores the sync information from the data store document
+     *
+     * @param document stored document, or null if the user was never synchronized
+     * @return the sync information
+     */
+    public static CalendarsSyncState fromJson(Json document) {
+        if (document == null || document.isEmpty()) {
+            return new CalendarsSyncState(null);
+        }
+        final CalendarsSyncState state = new CalendarsSyncState(document.longInteger(LAST_SYNC));
+        final Json calendars = document.json(CALENDARS);
+        if (calendars != null) {
+            for (String key : calendars.keys()) {
+                final String token = calendars.string(key);
+                if (StringUtils.isNotBlank(token)) {
+                    state.lastTokens.put(key, token);
+                }
+            }
+        }
+        final Json storedCheckpoints = document.json(CHECKPOINTS);
+        if (storedCheckpoints != null) {
+            for (String key : storedCheckpoints.keys()) {
+                final Json checkpoint = storedCheckpoints.json(key);
+                if (checkpoint != null && !checkpoint.isEmpty()) {
+                    state.checkpoints.put(key, checkpoint);
+                }
+            }
+        }
+        final Json storedSchedules = document.json(SCHEDULES);
+        if (storedSchedules != null) {
+            for (String key : storedSchedules.keys()) {
+                final Json schedule = storedSchedules.json(key);
+                if (schedule != null && !schedule.isEmpty()) {
+                    state.schedules.put(key, schedule);
+                }
+            }
+        }
+        final Json storedCalendarList = document.json(CALENDAR_LIST);
+        if (storedCalendarList != null) {
+            for (String key : storedCalendarList.keys()) {
+                final String calendarId = storedCalendarList.string(key);
+                if (StringUtils.isNotBlank(calendarId)) {
+                    state.calendarList.put(key, calendarId);
+                }
+            }
+        }
+        state.calendarListToken = document.string(CALENDAR_LIST_TOKEN);
+        state.replica = document.string(REPLICA);
+        state.savedAt = document.longInteger(SAVED_AT);
+        return state;
+    }
+
+    public Long getLastSync() {
+        return lastSync;
+    }
+
+    /**
+     * @return id of the replica that saved the sync information, or null if it is not known
+     */
+    public String getReplica() {
+        return replica;
+    }
+
+    /**
+     * @return time when the replica saved the sync information, or null if it is not known
+     */
+    public Long getSavedAt() {
+        return savedAt;
+    }
+
+    /**
+     * Marks the sync as run by the polling of the replica that owns the user, so its saves keep the
+     * user for the replica
+     *
+     * @param replicaId id of the replica
+     */
+    public void setPollingReplica(String replicaId) {
+        this.pollingReplica = replicaId;
+    }
+
+    /**
+     * Checks if the sync information was saved recently by other replica, that may still be
+     * synchronizing the user
+     *
+     * @param replicaId id of the current replica
+     * @param now current time
+     * @param leaseTime time a replica keeps its users after its last renewal
+     * @return true if other replica saved the sync information within the lease time
+     */
+    public boolean isSavedByOtherReplica(String replicaId, long now, long leaseTime) {
+        return StringUtils.isNotBlank(replica) && !replica.equals(replicaId)
+                && savedAt != null && now - savedAt < leaseTime;
+    }
+
+    public int getLastTokensCount() {
+        return lastTokens.size();
+    }
+
+    /**
+     * @param calendarKey calendar key
+     * @return the sync token stored by the last sync, or null if the calendar was never synchronized
+     */
+    public String getLastToken(String calendarKey) {
+        return lastTokens.get(calendarKey);
+    }
+
+    /**
+     * Sets the sync token reached by the current sync
+     *
+     * @param calendarKey calendar key
+     * @param token sync token, or null if the calendar does not have a token yet
+     */
+    public void setToken(String calendarKey, String token) {
+        syncedCalendars.add(calendarKey);
+        if (StringUtils.isNotBlank(token)) {
+            tokens.put(calendarKey, token);
+        } else {
+            tokens.remove(calendarKey);
+        }
+    }
+
+    public Json getCheckpoint(String calendarKey) {
+        return checkpoints.get(calendarKey);
+    }
+
+    /**
+     * Sets the page where the sync of the calendar must be resumed
+     *
+     * @param calendarKey calendar key
+     * @param checkpoint checkpoint returned by the service, or null when the sync of the calendar finished
+     */
+    public void setCheckpoint(String calendarKey, Json checkpoint) {
+        if (checkpoint != null && !checkpoint.isEmpty()) {
+            checkpoints.put(calendarKey, checkpoint);
+        } else {
+            checkpoints.remove(calendarKey);
+        }
+    }
+
+    /**
+     * @return the sync token of the calendar list, or null if the calendar list was never fetched
+     */
+    public String getCalendarListToken() {
+        return calendarListToken;
+    }
+
+    /**
+     * Updates the calendar list of the user. Deleted and hidden calendars are removed from the list.
+     *
+     * @param response response of the calendar list sync, with the changed calendars and the new sync token
+     */
+    public void applyCalendarList(Json response) {
+        if (response.bool("fullSync", false)) {
+            calendarList.clear();
+        }
+        final List<Json> calendars = response.jsons("calendars");
+        if (calendars != null) {
+            for (Json calendar : calendars) {
+                final String calendarId = calendar.string("id");
+                if (StringUtils.isNotBlank(calendarId)) {
+                    final String key = MapsUtils.cleanDotKey(calendarId);
+                    // hidden calendars are not returned by a full fetch, so they are removed on the incremental ones too
+                    if (calendar.bool("deleted", false) || calendar.bool("hidden", false)) {
+                        calendarList.remove(key);
+                    } else {
+                        calendarList.put(key, calendarId);
+                    }
+                }
+            }
+        }
+        calendarListToken = response.string("queryToken");
+    }
+
+    /**
+     * @return ids of the calendars of the user
+     */
+    public List<String> getCalendarIds() {
+        return new ArrayList<>(calendarList.values());
+    }
+
+    /**
+     * Checks if the calendar has to be synchronized on the current sync cycle
+     *
+     * @param calendarKey calendar key
+     * @param now current time
+     * @return true if the calendar was never synchronized, its sync did not finish or its interval elapsed
+     */
+    public boolean isSyncDue(String calendarKey, long now) {
+        if (checkpoints.containsKey(calendarKey)) {
+            return true;
+        }
+        final Json schedule = schedules.get(calendarKey);
+        final Long nextSync = schedule != null ? schedule.longInteger(NEXT_SYNC) : null;
+        return nextSync == null || now >= nextSync;
+    }
+
+    /**
+     * Calculates since when the changes of a calendar have to be fetched if its sync token expired
+     *
+     * @param calendarKey calendar key
+     * @return the time of the last finished sync of the calendar minus a margin, or null if it is
+     * not known and a full sync is needed
+     */
+    public Long getRecoveryTime(String calendarKey) {
+        final Json schedule = schedules.get(calendarKey);
+        Long syncedAt = null;
+        if (schedule != null) {
+            syncedAt = schedule.longInteger(SYNCED_AT);
+            if (syncedAt == null && schedule.longInteger(NEXT_SYNC) != null && schedule.longInteger(INTERVAL) != null) {
+                // schedules stored before the time of the sync was kept, the sync was done before
+                // the next one minus its interval
+                syncedAt = schedule.longInteger(NEXT_SYNC) - schedule.longInteger(INTERVAL);
+            }
+        } else if (lastTokens.containsKey(calendarKey)) {
+            // calendars without a schedule are synchronized on every cycle of the user
+            syncedAt = lastSync;
+        }
+        return syncedAt != null ? syncedAt - RECOVERY_MARGIN : null;
+    }
+
+    /**
+     * Registers a finished sync of the calendar and schedules the next one
+     *
+     * @param calendarKey calendar key
+     * @param changed true if changes were found on the calendar
+     * @param now current time
+     * @param baseInterval interval between sync cycles
+     * @param maxInterval max interval for calendars without changes
+     */
+    public void registerSync(String calendarKey, boolean changed, long now, long baseInterval, long maxInterval) {
+        final Json previous = schedules.get(calendarKey);
+        final Long previousInterval = previous != null ? previous.longInteger(INTERVAL) : null;
+        final Long lastChange = changed ? Long.valueOf(now) : (previous != null ? previous.longInteger(LAST_CHANGE) : null);
+        final long interval = nextInterval(previousInterval, changed, baseInterval, maxInterval);
+
+        // half cycle of tolerance, so the calendar is not skipped because the cycle started a bit earlier
+        schedules.put(calendarKey, Json.map()
+                .set(LAST_CHANGE, lastChange)
+                .set(INTERVAL, interval)
+                .set(NEXT_SYNC, now + interval - baseInterval / 2)
+                .set(SYNCED_AT, now));
+    }
+
+    /**
+     * Registers a finished sync of a calendar whose changes are pushed by Google. The calendar is
+     * polled again only as fallback, after the given interval.
+     *
+     * @param calendarKey calendar key
+     * @param changed true if changes were found on the calendar
+     * @param now current time
+     * @param fallbackInterval interval until the calendar is polled again
+     */
+    public void registerPushedSync(String calendarKey, boolean changed, long now, long fallbackInterval) {
+        final Json previous = schedules.get(calendarKey);
+        final Long lastChange = changed ? Long.valueOf(now) : (previous != null ? previous.longInteger(LAST_CHANGE) : null);
+        schedules.put(calendarKey, Json.map()
+                .set(LAST_CHANGE, lastChange)
+                .set(INTERVAL, fallbackInterval)
+                .set(NEXT_SYNC, now + fallbackInterval)
+                .set(SYNCED_AT, now));
+    }
+
+    /**
+     * Calculates the interval until the next sync of a calendar
+     *
+     * @param previousInterval last interval of the calendar, or null if it does not have one
+     * @param changed true if changes were found on the calendar
+     * @param baseInterval interval between sync cycles
+     * @param maxInterval max interval for calendars without changes
+     * @return the base interval if the calendar changed, otherwise the previous interval doubled up to the max interval
+     */
+    public static long nextInterval(Long previousInterval, boolean changed, long baseInterval, long maxInterval) {
+        if (changed || previousInterval == null || previousInterval < baseInterval) {
+            return baseInterval;
+        }
+        return Math.max(baseInterval, Math.min(previousInterval * 2, maxInterval));
+    }
+
+    /**
+     * Builds the document to store on the data store
+     *
+     * @param userId user id
+     * @param allCalendars true if all the calendars of the user were synchronized, so calendars not
+     *                     synchronized were removed. Otherwise the last tokens of the other calendars are kept.
+     * @param lastSyncTime time of the sync
+     * @return document to store
+     */
+    public Json toJson(String userId, boolean allCalendars, Long lastSyncTime) {
+        final Json calendars = Json.map();
+        if (!allCalendars) {
+            lastTokens.forEach((key, token) -> calendars.set(key, token));
+        }
+        tokens.forEach((key, token) -> calendars.set(key, token));
+
+        final Json storedCheckpoints = Json.map();
+        checkpoints.forEach((key, checkpoint) -> {
+            if (!allCalendars || syncedCalendars.contains(key)) {
+                storedCheckpoints.set(key, checkpoint);
+            }
+        });
+
+        final Json storedSchedules = Json.map();
+        schedules.forEach((key, schedule) -> {
+            if (!allCalendars || syncedCalendars.contains(key)) {
+                storedSchedules.set(key, schedule);
+            }
+        });
+
+        final Json storedCalendarList = Json.map();
+        calendarList.forEach((key, calendarId) -> storedCalendarList.set(key, calendarId));
+
+        return Json.map()
+                .set(ID, userId)
+                .set(CALENDARS, calendars)
+                .set(CHECKPOINTS, storedCheckpoints)
+                .set(SCHEDULES, storedSchedules)
+                .set(CALENDAR_LIST, storedCalendarList)
+                .set(CALENDAR_LIST_TOKEN, calendarListToken)
+                .set(LAST_SYNC, lastSyncTime)
+                .set(REPLICA, pollingReplica != null ? pollingReplica : replica)
+                .set(SAVED_AT, pollingReplica != null ? Long.valueOf(System.currentTimeMillis()) : savedAt);
+    }
+}
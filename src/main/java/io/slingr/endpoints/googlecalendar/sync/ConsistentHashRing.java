@@ -0,0 +1,72 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * <p>Consistent hashing ring that assigns keys to nodes. Each node is placed several times on the
+ * ring, so the keys are divided evenly and only the keys of a node are moved when it joins or
+ * leaves the ring.
+ */
+public class ConsistentHashRing {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 100;
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes;
+
+    /**
+     * @param nodes ids of the nodes
+     * @param virtualNodes number of times that each node is placed on the ring
+     */
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        final int replicas = virtualNodes > 0 ? virtualNodes : DEFAULT_VIRTUAL_NODES;
+        for (String node : nodes) {
+            for (int i = 0; i < replicas; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+    }
+
+    /**
+     * @param key key to assign
+     * @return the node that owns the key, or null if the ring is empty
+     */
+    public String getNode(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        // first node clockwise from the key, wrapping around at the end of the ring
+        final Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    static long hash(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not available", ex);
+        }
+    }
+}
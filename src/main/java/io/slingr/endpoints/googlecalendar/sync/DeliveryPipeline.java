@@ -0,0 +1,112 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Stage between the workers that fetch the changes from Google and the delivery of the events to
+ * the application. Pages of changes are queued and delivered by a separate pool of senders.
+ *
+ * <p>The queue is bounded: when the delivery falls behind, the fetch workers wait until there is
+ * space on the queue, so the changes fetched never pile up in memory.
+ *
+ * <p>Pages queued at the same time can be delivered in any order, so the pages of one calendar
+ * must be queued once the previous page was delivered.
+ */
+public class DeliveryPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryPipeline.class);
+
+    public static final int DEFAULT_SENDERS = 4;
+    public static final int DEFAULT_CAPACITY = 20;
+
+    private final int senders;
+    private final int capacity;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final AtomicInteger queuedPages = new AtomicInteger(0);
+    private final AtomicLong queuedEvents = new AtomicLong(0);
+
+    /**
+     * @param senders number of threads that deliver the events
+     * @param capacity max number of pages waiting to be delivered
+     */
+    public DeliveryPipeline(int senders, int capacity) {
+        this.senders = senders > 0 ? senders : DEFAULT_SENDERS;
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.executor = Executors.newFixedThreadPool(this.senders);
+        // pages being delivered plus pages waiting on the queue
+        this.slots = new Semaphore(this.senders + this.capacity);
+        logger.info(String.format("Delivery pipeline started - senders [%s], capacity [%s] pages", this.senders, this.capacity));
+    }
+
+    /**
+     * Queues the delivery of a page of changes. It blocks while the queue is full.
+     *
+     * @param events number of changes on the page
+     * @param delivery task that delivers the changes and returns the number of delivered events
+     * @return the result of the delivery
+     * @throws InterruptedException if the thread is interrupted while waiting for space on the queue
+     */
+    public Future<Long> submit(int events, Callable<Long> delivery) throws InterruptedException {
+        slots.acquire();
+        queuedPages.incrementAndGet();
+        queuedEvents.addAndGet(events);
+        try {
+            return executor.submit(() -> {
+                queuedPages.decrementAndGet();
+                queuedEvents.addAndGet(-events);
+                try {
+                    return delivery.call();
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            queuedPages.decrementAndGet();
+            queuedEvents.addAndGet(-events);
+            slots.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return number of pages waiting to be delivered
+     */
+    public int getQueuedPages() {
+        return queuedPages.get();
+    }
+
+    /**
+     * @return number of changes waiting to be delivered
+     */
+    public long getQueuedEvents() {
+        return queuedEvents.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSenders() {
+        return senders;
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pages=%s/%s events=%s", getQueuedPages(), capacity, getQueuedEvents());
+    }
+}
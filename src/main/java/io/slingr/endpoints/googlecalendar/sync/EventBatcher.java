@@ -0,0 +1,227 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.utils.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>Groups the changes of the events of each user in batches, so the application receives one
+ * message with several changes instead of one message per change.
+ *
+ * <p>A batch is sent when it reaches the max size, when the time window since its first change
+ * elapses or when it is flushed explicitly. Sent batches are removed, so only the users with
+ * pending changes are kept in memory.
+ *
+ * <p>Batches that could not be sent are recorded by user, so the sync of the user does not store
+ * its new sync tokens until the failures are released at the end of the sync.
+ */
+public class EventBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventBatcher.class);
+
+    public static final int DEFAULT_MAX_SIZE = 100;
+    public static final long DEFAULT_WINDOW = TimeUnit.SECONDS.toMillis(5);
+    public static final long FLUSH_FAILED = -1;
+
+    private final int maxSize;
+    private final long window;
+    private final BiConsumer<String, List<Json>> sender;
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+    private final Map<String, Long> sentEvents = new ConcurrentHashMap<>();
+    private final Set<String> failedUsers = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService timer = null;
+
+    /**
+     * @param maxSize max number of changes on a batch
+     * @param window max time in milliseconds that a change waits in a batch
+     * @param sender function that sends a batch of changes of the given user
+     */
+    public EventBatcher(int maxSize, long window, BiConsumer<String, List<Json>> sender) {
+        this.maxSize = maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE;
+        this.window = window > 0 ? window : DEFAULT_WINDOW;
+        this.sender = sender;
+    }
+
+    public synchronized void start() {
+        if (timer == null) {
+            final long checkInterval = Math.max(100, window / 2);
+            timer = Executors.newSingleThreadScheduledExecutor();
+            timer.scheduleWithFixedDelay(this::flushExpired, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+            logger.info(String.format("Events batcher started - max size [%s], window [%s] ms", maxSize, window));
+        }
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+        batches.keySet().forEach(this::flush);
+        sentEvents.clear();
+        failedUsers.clear();
+    }
+
+    /**
+     * Adds changes to the batch of the user. Full batches are sent right away.
+     *
+     * @param userId user id
+     * @param events changes to send
+     */
+    public void add(String userId, List<Json> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        for (Json event : events) {
+            // batches are added and removed atomically by user, so a change is never added to a removed batch
+            final AtomicReference<List<Json>> fullBatch = new AtomicReference<>();
+            batches.compute(userId, (key, batch) -> {
+                final Batch current = batch != null ? batch : new Batch();
+                synchronized (current) {
+                    current.add(event);
+                    if (current.size() >= maxSize) {
+                        fullBatch.set(current.drain());
+                    }
+                }
+                return current;
+            });
+            if (fullBatch.get() != null) {
+                send(userId, fullBatch.get());
+            }
+        }
+    }
+
+    /**
+     * Sends the pending changes of the user
+     *
+     * @param userId user id
+     * @return number of changes of the user sent since the previous flush, or {@link #FLUSH_FAILED}
+     * if a batch of the user could not be sent since its failures were released
+     */
+    public long flush(String userId) {
+        final AtomicReference<List<Json>> pending = new AtomicReference<>();
+        batches.computeIfPresent(userId, (key, batch) -> {
+            synchronized (batch) {
+                pending.set(batch.drain());
+            }
+            return null;
+        });
+        final List<Json> events = pending.get();
+        if (events != null && !events.isEmpty()) {
+            send(userId, events);
+        }
+        final Long sent = sentEvents.remove(userId);
+        if (failedUsers.contains(userId)) {
+            return FLUSH_FAILED;
+        }
+        return sent != null ? sent : 0;
+    }
+
+    /**
+     * Forgets the failed batches of the user, once its sync finished and did not store the changes
+     * that could not be sent
+     *
+     * @param userId user id
+     */
+    public void release(String userId) {
+        failedUsers.remove(userId);
+    }
+
+    /**
+     * @param userId user id
+     * @return true if a batch of the user could not be sent since its failures were released
+     */
+    public boolean hasFailed(String userId) {
+        return failedUsers.contains(userId);
+    }
+
+    /**
+     * @return number of users with pending changes
+     */
+    public int getPendingUsers() {
+        return batches.size();
+    }
+
+    /**
+     * @return number of changes waiting to be sent
+     */
+    public int getPendingEvents() {
+        int pending = 0;
+        for (Batch batch : batches.values()) {
+            synchronized (batch) {
+                pending += batch.size();
+            }
+        }
+        return pending;
+    }
+
+    private void flushExpired() {
+        try {
+            final long now = System.currentTimeMillis();
+            for (String userId : batches.keySet()) {
+                final AtomicReference<List<Json>> expired = new AtomicReference<>();
+                batches.computeIfPresent(userId, (key, batch) -> {
+                    synchronized (batch) {
+                        if (batch.isExpired(now, window)) {
+                            expired.set(batch.drain());
+                            return null;
+                        }
+                    }
+                    return batch;
+                });
+                final List<Json> events = expired.get();
+                if (events != null && !events.isEmpty()) {
+                    send(userId, events);
+                }
+            }
+        } catch (Exception ex) {
+            logger.warn(String.format("Error when try to send the expired batches [%s]", ex.getMessage()), ex);
+        }
+    }
+
+    private void send(String userId, List<Json> events) {
+        try {
+            sender.accept(userId, events);
+            sentEvents.merge(userId, (long) events.size(), Long::sum);
+        } catch (Exception ex) {
+            logger.warn(String.format("Error when try to send a batch of [%s] events of user [%s] [%s]", events.size(), userId, ex.getMessage()), ex);
+            failedUsers.add(userId);
+        }
+    }
+
+    private static class Batch {
+        private List<Json> events = new ArrayList<>();
+        private long firstEventTime = 0;
+
+        void add(Json event) {
+            if (events.isEmpty()) {
+                firstEventTime = System.currentTimeMillis();
+            }
+            events.add(event);
+        }
+
+        int size() {
+            return events.size();
+        }
+
+        boolean isExpired(long now, long window) {
+            return !events.isEmpty() && now - firstEventTime >= window;
+        }
+
+        List<Json> drain() {
+            final List<Json> drained = events;
+            events = new ArrayList<>();
+            return drained;
+        }
+    }
+}
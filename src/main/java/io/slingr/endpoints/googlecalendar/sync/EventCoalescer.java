@@ -0,0 +1,114 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import com.google.api.client.util.DateTime;
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Removes the duplicated changes of the events found on one sync of a user, so the same change is
+ * not sent twice to the application. Duplicates happen when an event is returned on several pages,
+ * when a full sync is executed after an invalid sync token or when an interrupted sync is resumed.
+ *
+ * <p>Only the newest state of each event is kept, using the 'updated' field. Events are sent page by
+ * page, so the coalescer remembers the last state sent of each event until the sync finishes.
+ */
+public class EventCoalescer {
+
+    private static final String FIELD_ID = "id";
+    private static final String FIELD_CALENDAR_ID = "calendarId";
+    private static final String FIELD_UPDATED = "updated";
+
+    private final Map<String, Long> sentEvents = new ConcurrentHashMap<>();
+    private final AtomicLong discardedEvents = new AtomicLong(0);
+
+    /**
+     * Removes the duplicated changes of a page of events
+     *
+     * @param events events fetched from Google
+     * @return the newest state of each event that was not sent yet, in the original order
+     */
+    public List<Json> coalesce(List<Json> events) {
+        final List<Json> result = new ArrayList<>();
+        if (events == null || events.isEmpty()) {
+            return result;
+        }
+
+        // newest state of each event on the page
+        final Map<String, Json> newestEvents = new LinkedHashMap<>();
+        for (Json event : events) {
+            final String key = getKey(event);
+            if (key == null) {
+                // it can not be compared with other changes
+                newestEvents.put("_" + newestEvents.size(), event);
+                continue;
+            }
+            final Json previous = newestEvents.get(key);
+            if (previous == null || getUpdated(event) >= getUpdated(previous)) {
+                if (previous != null) {
+                    newestEvents.remove(key);
+                    discardedEvents.incrementAndGet();
+                }
+                newestEvents.put(key, event);
+            } else {
+                discardedEvents.incrementAndGet();
+            }
+        }
+
+        // changes already sent on previous pages are discarded
+        for (Map.Entry<String, Json> entry : newestEvents.entrySet()) {
+            final Json event = entry.getValue();
+            final String key = getKey(event);
+            if (key == null || isNewer(key, getUpdated(event))) {
+                result.add(event);
+            } else {
+                discardedEvents.incrementAndGet();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of changes discarded because they were duplicated
+     */
+    public long getDiscardedEvents() {
+        return discardedEvents.get();
+    }
+
+    private boolean isNewer(String key, long updated) {
+        final boolean[] newer = {false};
+        sentEvents.compute(key, (k, sentUpdated) -> {
+            if (sentUpdated == null || updated > sentUpdated) {
+                newer[0] = true;
+                return updated;
+            }
+            return sentUpdated;
+        });
+        return newer[0];
+    }
+
+    private static String getKey(Json event) {
+        if (event == null || StringUtils.isBlank(event.string(FIELD_ID))) {
+            return null;
+        }
+        return event.string(FIELD_CALENDAR_ID) + ":" + event.string(FIELD_ID);
+    }
+
+    private static long getUpdated(Json event) {
+        final String updated = event.string(FIELD_UPDATED);
+        if (StringUtils.isNotBlank(updated)) {
+            try {
+                return DateTime.parseRfc3339(updated).getValue();
+            } catch (Exception ex) {
+                // invalid date, the change is considered as the oldest one
+            }
+        }
+        return 0;
+    }
+}
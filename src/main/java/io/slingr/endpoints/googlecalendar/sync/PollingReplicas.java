@@ -0,0 +1,141 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.services.exchange.Parameter;
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Divides the users to synchronize between the replicas of the endpoint. Each replica keeps a
+ * lease on the endpoint data store while it is running, and the users are assigned to the replicas
+ * with live leases by consistent hashing on the user id.
+ *
+ * <p>When a replica joins or its lease expires, the ring is rebuilt on the next renewal and only
+ * the users of that replica are moved to other replicas.
+ */
+public class PollingReplicas {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollingReplicas.class);
+
+    public static final long DEFAULT_RENEWAL_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    // a replica is considered down when it misses a few renewals
+    public static final int RENEWALS_PER_LEASE = 4;
+
+    public static final String ID = "_id";
+    public static final String EXPIRATION = "expiration";
+
+    private final DataStore leasesDataStore;
+    private final String replicaId;
+    private final long renewalInterval;
+    private final long leaseTime;
+    private volatile ConsistentHashRing ring;
+    private ScheduledExecutorService renewals = null;
+
+    /**
+     * @param leasesDataStore data store shared by the replicas
+     * @param renewalInterval time between renewals of the lease in milliseconds
+     */
+    public PollingReplicas(DataStore leasesDataStore, long renewalInterval) {
+        this(leasesDataStore, UUID.randomUUID().toString(), renewalInterval);
+    }
+
+    PollingReplicas(DataStore leasesDataStore, String replicaId, long renewalInterval) {
+        this.leasesDataStore = leasesDataStore;
+        this.replicaId = replicaId;
+        this.renewalInterval = renewalInterval > 0 ? renewalInterval : DEFAULT_RENEWAL_INTERVAL;
+        this.leaseTime = this.renewalInterval * RENEWALS_PER_LEASE;
+        // until the first renewal this replica owns all the users
+        this.ring = new ConsistentHashRing(Collections.singletonList(replicaId), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * Renews the lease now and then periodically in background
+     */
+    public void start() {
+        renew();
+        renewals = Executors.newSingleThreadScheduledExecutor();
+        renewals.scheduleWithFixedDelay(this::renew, renewalInterval, renewalInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the renewals and releases the lease, so the other replicas take the users of this one
+     */
+    public void stop() {
+        if (renewals != null) {
+            renewals.shutdownNow();
+        }
+        try {
+            leasesDataStore.removeById(replicaId);
+        } catch (Exception ex) {
+            logger.info(String.format("Lease of replica [%s] could not be released [%s]", replicaId, ex.getMessage()));
+        }
+    }
+
+    /**
+     * Saves the lease of this replica and rebuilds the ring with the replicas that have a live lease.
+     * If the data store can not be read, the current ring is kept.
+     */
+    public synchronized void renew() {
+        final long now = System.currentTimeMillis();
+        try {
+            leasesDataStore.save(Json.map()
+                    .set(ID, replicaId)
+                    .set(EXPIRATION, now + leaseTime)
+                    .set(Parameter.DATA_STORE_TTL, leaseTime));
+
+            final TreeSet<String> replicas = new TreeSet<>();
+            replicas.add(replicaId);
+            final DataStoreResponse response = leasesDataStore.find();
+            final List<Json> leases = response != null ? response.getItems() : null;
+            if (leases != null) {
+                for (Json lease : leases) {
+                    final Long expiration = lease != null ? lease.longInteger(EXPIRATION) : null;
+                    if (expiration != null && expiration > now && StringUtils.isNotBlank(lease.string(ID))) {
+                        replicas.add(lease.string(ID));
+                    }
+                }
+            }
+
+            if (!replicas.equals(ring.getNodes())) {
+                ring = new ConsistentHashRing(replicas, ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+                logger.info(String.format("Users rebalanced between [%s] replicas %s - current replica [%s]", replicas.size(), replicas, replicaId));
+            }
+        } catch (Exception ex) {
+            logger.warn(String.format("Lease of replica [%s] could not be renewed [%s]", replicaId, ex.getMessage()));
+        }
+    }
+
+    /**
+     * @param userId user id
+     * @return true if the user has to be synchronized by this replica
+     */
+    public boolean owns(String userId) {
+        return replicaId.equals(ring.getNode(userId));
+    }
+
+    public int getReplicas() {
+        return ring.size();
+    }
+
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    /**
+     * @return time in milliseconds that the users of a replica are kept after its last renewal
+     */
+    public long getLeaseTime() {
+        return leaseTime;
+    }
+}
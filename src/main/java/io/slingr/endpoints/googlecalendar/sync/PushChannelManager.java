@@ -0,0 +1,288 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.googlecalendar.services.GoogleCalendarService;
+import io.slingr.endpoints.googlecalendar.services.entities.PushChannel;
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.services.exchange.Parameter;
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * <p>Keeps the watch channels registered on Google for the synchronized calendars. Channels are
+ * stored on the endpoint data store so notifications can be validated after a restart, and they
+ * are renewed some time before they expire.
+ *
+ * <p>Channels are looked up on the data store by user when the user is disconnected or its
+ * calendars are removed, so the channels registered by other replicas or before a restart are
+ * stopped too.
+ *
+ * <p>The channels kept in memory can be renewed by other replica, so a notification with an unknown
+ * channel id is validated again with the stored channel.
+ */
+public class PushChannelManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(PushChannelManager.class);
+
+    public static final long CHANNEL_TTL = TimeUnit.DAYS.toMillis(7);
+    public static final long RENEWAL_MARGIN = TimeUnit.DAYS.toMillis(1);
+    private static final int USER_CHANNELS_PAGE_SIZE = 100;
+
+    // states sent by Google on the notifications
+    public static final String STATE_SYNC = "sync";
+    public static final String STATE_EXISTS = "exists";
+    public static final String STATE_NOT_EXISTS = "not_exists";
+
+    private final DataStore channelsDataStore;
+    private final String webhookUrl;
+    private final Map<String, PushChannel> channels = new ConcurrentHashMap<>();
+
+    public PushChannelManager(DataStore channelsDataStore, String webhookUrl) {
+        this.channelsDataStore = channelsDataStore;
+        this.webhookUrl = webhookUrl;
+    }
+
+    /**
+     * Registers a channel for the calendar if there is not a valid one yet
+     *
+     * @param userId user id
+     * @param calendarId calendar id
+     * @param service calendar service of the user
+     * @return true if the calendar has a valid channel
+     */
+    public boolean ensureChannel(String userId, String calendarId, GoogleCalendarService service) {
+        final PushChannel current = findByKey(PushChannel.buildKey(userId, calendarId));
+        if (current != null && !current.isExpiring(RENEWAL_MARGIN)) {
+            return true;
+        }
+
+        final String channelId = UUID.randomUUID().toString();
+        final String token = PushChannel.buildKey(userId, calendarId);
+        final Json response = service.watchEvents(calendarId, channelId, webhookUrl, token, System.currentTimeMillis() + CHANNEL_TTL);
+        if (response == null || response.is(Parameter.EXCEPTION_FLAG)) {
+            logger.warn(String.format("Channel for calendar [%s] of user [%s] could not be registered [%s]", calendarId, userId, response));
+            return current != null && !current.isExpiring(0);
+        }
+
+        final Long expiration = response.longInteger(PushChannel.EXPIRATION);
+        final PushChannel channel = new PushChannel(channelId, response.string(PushChannel.RESOURCE_ID), userId, calendarId,
+                expiration != null ? expiration : System.currentTimeMillis() + CHANNEL_TTL);
+        save(channel);
+
+        if (current != null) {
+            // the old channel is replaced by the new one
+            service.stopChannel(current.getChannelId(), current.getResourceId());
+        }
+        return true;
+    }
+
+    /**
+     * @param userId user id
+     * @param calendarId calendar id
+     * @return true if the changes of the calendar are notified by a channel that did not expire
+     */
+    public boolean hasValidChannel(String userId, String calendarId) {
+        final PushChannel channel = findByKey(PushChannel.buildKey(userId, calendarId));
+        return channel != null && !channel.isExpiring(0);
+    }
+
+    /**
+     * Processes a notification sent by Google
+     *
+     * @param channelId value of the 'X-Goog-Channel-ID' header
+     * @param token value of the 'X-Goog-Channel-Token' header
+     * @param resourceState value of the 'X-Goog-Resource-State' header
+     * @param changeListener called when the events of the calendar changed
+     * @param removalListener called when the calendar does not exist anymore, the channel is already removed
+     * @return the channel of the notification, or null if it does not belong to a registered channel
+     */
+    public PushChannel handleNotification(String channelId, String token, String resourceState,
+                                          Consumer<PushChannel> changeListener, Consumer<PushChannel> removalListener) {
+        final PushChannel channel = findChannel(channelId, token);
+        if (channel == null) {
+            logger.info(String.format("Push notification for unknown channel [%s]", channelId));
+        } else if (STATE_SYNC.equals(resourceState)) {
+            logger.debug(String.format("Channel [%s] registered for calendar [%s]", channelId, channel.getCalendarId()));
+        } else if (STATE_EXISTS.equals(resourceState)) {
+            changeListener.accept(channel);
+        } else if (STATE_NOT_EXISTS.equals(resourceState)) {
+            logger.info(String.format("Calendar [%s] of channel [%s] does not exist anymore", channel.getCalendarId(), channelId));
+            remove(channel);
+            removalListener.accept(channel);
+        } else {
+            logger.info(String.format("Push notification with unknown state [%s] for channel [%s]", resourceState, channelId));
+        }
+        return channel;
+    }
+    /**
+     * Finds the channel that generated a notification
+     *
+     * @param channelId value of the 'X-Goog-Channel-ID' header
+     * @param token value of the 'X-Goog-Channel-Token' header
+     * @return the channel or null if the notification does not belong to a registered channel
+     */
+    public PushChannel findChannel(String channelId, String token) {
+        if (StringUtils.isBlank(channelId) || StringUtils.isBlank(token)) {
+            return null;
+        }
+        PushChannel channel = findByKey(token);
+        if (channel != null && !channel.matches(channelId, token)) {
+            // the channel could be renewed by other replica
+            channel = reload(token);
+        }
+        if (channel == null || !channel.matches(channelId, token)) {
+            return null;
+        }
+        return channel;
+    }
+
+    /**
+     * Stops and removes the channels of the user
+     *
+     * @param userId user id
+     * @param service calendar service of the user, or null if the channels can not be stopped on Google
+     */
+    public void removeUserChannels(String userId, GoogleCalendarService service) {
+        for (PushChannel channel : findUserChannels(userId)) {
+            stop(channel, service);
+        }
+    }
+
+    /**
+     * Stops and removes the channels of the calendars that are not longer on the calendar list of the user
+     *
+     * @param userId user id
+     * @param calendarIds ids of the current calendars of the user
+     * @param service calendar service of the user
+     */
+    public void removeStaleChannels(String userId, Collection<String> calendarIds, GoogleCalendarService service) {
+        final Set<String> currentCalendars = new HashSet<>(calendarIds);
+        for (PushChannel channel : findUserChannels(userId)) {
+            if (!currentCalendars.contains(channel.getCalendarId())) {
+                logger.info(String.format("Calendar [%s] of user [%s] was removed, stopping its channel", channel.getCalendarId(), userId));
+                stop(channel, service);
+            }
+        }
+    }
+
+    /**
+     * Stops the channel on Google and removes it
+     *
+     * @param channel channel to stop
+     * @param service calendar service of the user, or null if the channel can not be stopped on Google
+     */
+    public void stop(PushChannel channel, GoogleCalendarService service) {
+        if (service != null) {
+            service.stopChannel(channel.getChannelId(), channel.getResourceId());
+        }
+        remove(channel);
+    }
+
+    /**
+     * Finds the channels of the user stored by any replica, and the ones kept in memory
+     *
+     * @param userId user id
+     * @return channels of the user
+     */
+    List<PushChannel> findUserChannels(String userId) {
+        final Map<String, PushChannel> userChannels = new LinkedHashMap<>();
+        try {
+            String offset = null;
+            boolean lastPage = false;
+            while (!lastPage) {
+                final Json filter = Json.map()
+                        .set(PushChannel.USER_ID, userId)
+                        .set("_size", USER_CHANNELS_PAGE_SIZE);
+                if (StringUtils.isNotBlank(offset)) {
+                    filter.set("_offset", offset);
+                }
+                final DataStoreResponse response = channelsDataStore.find(filter);
+                final List<Json> items = response != null ? response.getItems() : null;
+                if (items != null) {
+                    for (Json item : items) {
+                        final PushChannel channel = PushChannel.fromJson(item);
+                        if (channel != null && userId.equals(channel.getUserId())) {
+                            userChannels.put(channel.getKey(), channel);
+                        }
+                    }
+                }
+                offset = response != null ? response.getOffset() : null;
+                lastPage = items == null || items.size() < USER_CHANNELS_PAGE_SIZE || StringUtils.isBlank(offset);
+            }
+        } catch (Exception ex) {
+            logger.warn(String.format("Channels of user [%s] could not be found [%s]", userId, ex.getMessage()));
+        }
+        channels.values().stream()
+                .filter(channel -> userId.equals(channel.getUserId()))
+                .forEach(channel -> userChannels.putIfAbsent(channel.getKey(), channel));
+        return new ArrayList<>(userChannels.values());
+    }
+
+    /**
+     * Removes a channel that is not longer valid, like the channel of a removed calendar
+     *
+     * @param channel channel to remove
+     */
+    public void remove(PushChannel channel) {
+        // the channel could be loaded from the data store, so it is compared by id
+        channels.computeIfPresent(channel.getKey(), (key, current) -> StringUtils.equals(current.getChannelId(), channel.getChannelId()) ? null : current);
+        try {
+            channelsDataStore.removeById(channel.getKey());
+        } catch (Exception ex) {
+            logger.info(String.format("Channel [%s] could not be removed [%s]", channel.getKey(), ex.getMessage()));
+        }
+    }
+
+    private PushChannel findByKey(String key) {
+        PushChannel channel = channels.get(key);
+        if (channel == null) {
+            try {
+                channel = PushChannel.fromJson(channelsDataStore.findById(key));
+                if (channel != null) {
+                    channels.put(key, channel);
+                }
+            } catch (Exception ex) {
+                logger.debug(String.format("Channel [%s] not found [%s]", key, ex.getMessage()));
+            }
+        }
+        return channel;
+    }
+
+    private PushChannel reload(String key) {
+        try {
+            final PushChannel channel = PushChannel.fromJson(channelsDataStore.findById(key));
+            if (channel != null) {
+                channels.put(key, channel);
+            } else {
+                channels.remove(key);
+            }
+            return channel;
+        } catch (Exception ex) {
+            logger.debug(String.format("Channel [%s] not found [%s]", key, ex.getMessage()));
+            return channels.get(key);
+        }
+    }
+
+    private void save(PushChannel channel) {
+        channels.put(channel.getKey(), channel);
+        try {
+            channelsDataStore.save(channel.toJson().set(Parameter.DATA_STORE_TTL, CHANNEL_TTL));
+        } catch (Exception ex) {
+            logger.warn(String.format("Channel [%s] could not be saved [%s]", channel.getKey(), ex.getMessage()), ex);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Progress of one cycle of the sync process. It is updated concurrently by the workers
+ * that synchronize the users.
+ *
+ * <p>The total of users can be unknown while the users are being read from the data store.
+ */
+public class SyncProgress {
+
+    private static final int LOG_STEPS = 10;
+    private static final int UNKNOWN_TOTAL_LOG_STEP = 100;
+
+    private final long cycle;
+    private volatile int totalUsers;
+    private final long startTime;
+    private final AtomicInteger finishedUsers = new AtomicInteger(0);
+    private final AtomicInteger failedUsers = new AtomicInteger(0);
+    private final AtomicLong sentEvents = new AtomicLong(0);
+
+    /**
+     * @param cycle sync cycle
+     * @param totalUsers number of users to synchronize, or 0 if it is not known yet
+     */
+    public SyncProgress(long cycle, int totalUsers) {
+        this.cycle = cycle;
+        this.totalUsers = totalUsers;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Registers a finished user
+     *
+     * @param success true if the user was synchronized without errors
+     * @param events number of events sent to the application for the user
+     * @return true when the progress should be logged
+     */
+    public boolean userFinished(boolean success, long events) {
+        if (!success) {
+            failedUsers.incrementAndGet();
+        }
+        sentEvents.addAndGet(events);
+        final int finished = finishedUsers.incrementAndGet();
+        final int total = totalUsers;
+        final int step = total > 0 ? Math.max(1, total / LOG_STEPS) : UNKNOWN_TOTAL_LOG_STEP;
+        return finished % step == 0 || finished == total;
+    }
+
+    /**
+     * Sets the number of users to synchronize, once all of them were read
+     *
+     * @param totalUsers number of users
+     */
+    public void setTotalUsers(int totalUsers) {
+        this.totalUsers = totalUsers;
+    }
+
+    public long getCycle() {
+        return cycle;
+    }
+
+    public int getTotalUsers() {
+        return totalUsers;
+    }
+
+    public int getFinishedUsers() {
+        return finishedUsers.get();
+    }
+
+    public int getFailedUsers() {
+        return failedUsers.get();
+    }
+
+    public long getSentEvents() {
+        return sentEvents.get();
+    }
+
+    public long getElapsedTime() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("users=%s/%s failed=%s events=%s elapsed=%sms", getFinishedUsers(), totalUsers > 0 ? totalUsers : "?", getFailedUsers(), getSentEvents(), getElapsedTime());
+    }
+}
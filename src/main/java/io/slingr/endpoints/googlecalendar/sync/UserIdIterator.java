@@ -0,0 +1,92 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Iterates the ids of the users stored on a data store page by page, so only one page of ids is
+ * kept in memory instead of the whole configuration of all the users.
+ */
+public class UserIdIterator implements Iterator<String> {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    private static final String FIELD_ID = "_id";
+    private static final String PARAMETER_SIZE = "_size";
+    private static final String PARAMETER_OFFSET = "_offset";
+    private static final String PARAMETER_FIELDS = "_fields";
+
+    private final DataStore dataStore;
+    private final int pageSize;
+    private final Deque<String> page = new ArrayDeque<>();
+    private String offset = null;
+    private boolean lastPage = false;
+    private int invalidUsers = 0;
+
+    /**
+     * @param dataStore data store of the users
+     * @param pageSize number of users read on each request
+     */
+    public UserIdIterator(DataStore dataStore, int pageSize) {
+        this.dataStore = dataStore;
+        this.pageSize = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (page.isEmpty() && !lastPage) {
+            fetchPage();
+        }
+        return !page.isEmpty();
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.poll();
+    }
+
+    /**
+     * @return number of stored users without a valid id found so far
+     */
+    public int getInvalidUsers() {
+        return invalidUsers;
+    }
+
+    private void fetchPage() {
+        final Json filter = Json.map()
+                .set(PARAMETER_SIZE, pageSize)
+                .set(PARAMETER_FIELDS, FIELD_ID);
+        if (StringUtils.isNotBlank(offset)) {
+            filter.set(PARAMETER_OFFSET, offset);
+        }
+
+        final DataStoreResponse response = dataStore.find(filter);
+        final List<Json> items = response != null ? response.getItems() : null;
+        if (items == null || items.isEmpty()) {
+            lastPage = true;
+            return;
+        }
+        for (Json item : items) {
+            if (item != null && StringUtils.isNotBlank(item.string(FIELD_ID))) {
+                page.add(item.string(FIELD_ID));
+            } else {
+                invalidUsers++;
+            }
+        }
+
+        // the offset points to the next page
+        offset = response.getOffset();
+        lastPage = items.size() < pageSize || StringUtils.isBlank(offset);
+    }
+}
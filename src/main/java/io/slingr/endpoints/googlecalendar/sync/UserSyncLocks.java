@@ -0,0 +1,38 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Locks keyed by user id that prevent running two synchronizations over the same user at the
+ * same time, while synchronizations of different users never block each other.
+ *
+ * <p>Locks are never waited: when a user is already being synchronized the new request is
+ * skipped, because the running synchronization will fetch the same changes.
+ */
+public class UserSyncLocks {
+
+    private final Set<String> lockedUsers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Acquires the lock of the user if it is free
+     *
+     * @param userId user id
+     * @return true if the lock was acquired, false if the user is already being synchronized
+     */
+    public boolean tryLock(String userId) {
+        return lockedUsers.add(userId);
+    }
+
+    public void unlock(String userId) {
+        lockedUsers.remove(userId);
+    }
+
+    public boolean isLocked(String userId) {
+        return lockedUsers.contains(userId);
+    }
+
+    public int size() {
+        return lockedUsers.size();
+    }
+}
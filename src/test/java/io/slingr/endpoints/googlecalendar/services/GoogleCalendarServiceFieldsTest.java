@@ -0,0 +1,31 @@
+package io.slingr.endpoints.googlecalendar.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Tests over the projections built by the GoogleCalendarService class
+ */
+public class GoogleCalendarServiceFieldsTest {
+
+    @Test
+    public void testEventFields() {
+        Assert.assertNull(GoogleCalendarService.buildEventFields(null));
+        Assert.assertNull(GoogleCalendarService.buildEventFields(" "));
+
+        Assert.assertEquals("id,status,updated,summary,start(dateTime,date)",
+                GoogleCalendarService.buildEventFields("summary, start(dateTime,date)"));
+
+        // required fields are not repeated
+        Assert.assertEquals("id,status,updated,summary",
+                GoogleCalendarService.buildEventFields("id,summary,status"));
+    }
+
+    @Test
+    public void testEventsListFields() {
+        Assert.assertNull(GoogleCalendarService.buildEventsListFields(null));
+
+        Assert.assertEquals("nextPageToken,nextSyncToken,items(id,status,updated,organizer(email))",
+                GoogleCalendarService.buildEventsListFields("organizer(email)"));
+    }
+}
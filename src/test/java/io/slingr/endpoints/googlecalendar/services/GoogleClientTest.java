@@ -0,0 +1,123 @@
+package io.slingr.endpoints.googlecalendar.services;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleTokenResponse;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import io.slingr.endpoints.exceptions.EndpointException;
+import io.slingr.endpoints.googlecalendar.services.entities.ValidToken;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Tests over the token renewals of the GoogleClient class
+ */
+public class GoogleClientTest {
+
+    @Test
+    public void testSingleRenewalForConcurrentCallers() throws Exception {
+        final AtomicInteger requests = new AtomicInteger(0);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final GoogleClient client = new GoogleClient("app", "clientId", "clientSecret", "http://localhost/callback", ServiceType.CALENDAR) {
+            @Override
+            GoogleTokenResponse executeRefreshToken(String userId, String refreshToken) throws IOException {
+                requests.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                return new GoogleTokenResponse().setAccessToken("newToken").setExpiresInSeconds(3600L);
+            }
+        };
+
+        final ExecutorService callers = Executors.newFixedThreadPool(5);
+        try {
+            final List<Future<Json>> results = new ArrayList<>();
+            results.add(callers.submit(() -> client.checkToken("user1", null, "refresh1", null)));
+            Assert.assertTrue(started.await(1, TimeUnit.SECONDS));
+
+            // the other callers arrive while the first renewal is running
+            for (int i = 0; i < 4; i++) {
+                results.add(callers.submit(() -> client.checkToken("user1", null, "refresh1", null)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<Json> result : results) {
+                Assert.assertEquals("newToken", result.get(1, TimeUnit.SECONDS).string(ValidToken.TOKEN));
+            }
+            Assert.assertEquals(1, requests.get());
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectedRefreshTokenIsRemembered() {
+        final AtomicInteger requests = new AtomicInteger(0);
+        final GoogleClient client = new GoogleClient("app", "clientId", "clientSecret", "http://localhost/callback", ServiceType.CALENDAR) {
+            @Override
+            GoogleTokenResponse executeRefreshToken(String userId, String refreshToken) throws IOException {
+                requests.incrementAndGet();
+                throw new HttpResponseException.Builder(400, "Bad Request", new HttpHeaders())
+                        .setContent("{\"error\": \"invalid_grant\"}")
+                        .build();
+            }
+        };
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.checkToken("user1", null, "refresh1", null);
+                Assert.fail("The refresh token was rejected");
+            } catch (EndpointException ex) {
+                // expected
+            }
+        }
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testTemporaryFailureIsNotRemembered() {
+        final AtomicInteger requests = new AtomicInteger(0);
+        final GoogleClient client = new GoogleClient("app", "clientId", "clientSecret", "http://localhost/callback", ServiceType.CALENDAR) {
+            @Override
+            GoogleTokenResponse executeRefreshToken(String userId, String refreshToken) throws IOException {
+                if (requests.incrementAndGet() == 1) {
+                    throw new IOException("Read timed out");
+                }
+                return new GoogleTokenResponse().setAccessToken("newToken").setExpiresInSeconds(3600L);
+            }
+        };
+
+        try {
+            client.checkToken("user1", null, "refresh1", null);
+            Assert.fail("The first renewal failed");
+        } catch (EndpointException ex) {
+            // expected
+        }
+        Assert.assertEquals("newToken", client.checkToken("user1", null, "refresh1", null).string(ValidToken.TOKEN));
+        Assert.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testPermanentRefreshFailures() {
+        Assert.assertTrue(GoogleClient.isPermanentRefreshFailure(new HttpResponseException.Builder(400, "Bad Request", new HttpHeaders()).build()));
+        Assert.assertTrue(GoogleClient.isPermanentRefreshFailure(new HttpResponseException.Builder(401, "Unauthorized", new HttpHeaders()).build()));
+        Assert.assertFalse(GoogleClient.isPermanentRefreshFailure(new HttpResponseException.Builder(503, "Service Unavailable", new HttpHeaders()).build()));
+        Assert.assertFalse(GoogleClient.isPermanentRefreshFailure(new IOException("Connection reset")));
+    }
+}
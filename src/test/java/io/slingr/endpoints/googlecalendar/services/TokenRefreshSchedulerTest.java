@@ -0,0 +1,116 @@
+package io.slingr.endpoints.googlecalendar.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Tests over the TokenRefreshScheduler class
+ */
+public class TokenRefreshSchedulerTest {
+
+    private static final long MARGIN = 1000;
+
+    private static Date expiresIn(long time) {
+        return new Date(System.currentTimeMillis() + MARGIN + time);
+    }
+
+    @Test
+    public void testRenewalOrder() throws Exception {
+        final List<String> renewed = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(2);
+        final TokenRefreshScheduler scheduler = new TokenRefreshScheduler(MARGIN, 1, 20, 50, userId -> {
+            renewed.add(userId);
+            done.countDown();
+            return true;
+        });
+        scheduler.schedule("user1", expiresIn(-200));
+        scheduler.schedule("user2", expiresIn(-500));
+        scheduler.schedule("user3", expiresIn(TimeUnit.HOURS.toMillis(1)));
+        try {
+            scheduler.start();
+            Assert.assertTrue(done.await(1, TimeUnit.SECONDS));
+
+            // the token that expires first is renewed first, and tokens not due yet are kept
+            Assert.assertEquals("user2", renewed.get(0));
+            Assert.assertEquals("user1", renewed.get(1));
+            Assert.assertEquals(1, scheduler.size());
+            Assert.assertNotNull(scheduler.getRefreshTime("user3"));
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testReschedule() {
+        final TokenRefreshScheduler scheduler = new TokenRefreshScheduler(MARGIN, 1, 20, 50, userId -> true);
+        final Date firstExpiration = expiresIn(TimeUnit.MINUTES.toMillis(10));
+        final Date secondExpiration = expiresIn(TimeUnit.MINUTES.toMillis(60));
+
+        scheduler.schedule("user1", firstExpiration);
+        Assert.assertEquals(Long.valueOf(firstExpiration.getTime() - MARGIN), scheduler.getRefreshTime("user1"));
+
+        // the new token replaces the previous renewal
+        scheduler.schedule("user1", secondExpiration);
+        Assert.assertEquals(1, scheduler.size());
+        Assert.assertEquals(Long.valueOf(secondExpiration.getTime() - MARGIN), scheduler.getRefreshTime("user1"));
+
+        // tokens without expiration are not renewed
+        scheduler.schedule("user1", null);
+        Assert.assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        final AtomicInteger renewals = new AtomicInteger(0);
+        final TokenRefreshScheduler scheduler = new TokenRefreshScheduler(MARGIN, 1, 20, 50, userId -> {
+            renewals.incrementAndGet();
+            return true;
+        });
+        scheduler.schedule("user1", expiresIn(-100));
+        scheduler.remove("user1");
+        Assert.assertEquals(0, scheduler.size());
+        Assert.assertNull(scheduler.getRefreshTime("user1"));
+        try {
+            scheduler.start();
+            Thread.sleep(200);
+            Assert.assertEquals(0, renewals.get());
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testFailedRenewalIsRetried() throws Exception {
+        final AtomicInteger renewals = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(3);
+        final TokenRefreshScheduler scheduler = new TokenRefreshScheduler(MARGIN, 1, 20, 50, userId -> {
+            final int attempt = renewals.incrementAndGet();
+            done.countDown();
+            if (attempt == 1) {
+                throw new IllegalStateException("Connection reset");
+            }
+            // the second attempt fails and the third one works
+            return attempt > 2;
+        });
+        scheduler.schedule("user1", expiresIn(-100));
+        try {
+            scheduler.start();
+            Assert.assertTrue(done.await(2, TimeUnit.SECONDS));
+            Thread.sleep(300);
+
+            // the renewal is not scheduled again once it worked
+            Assert.assertEquals(3, renewals.get());
+            Assert.assertEquals(0, scheduler.size());
+        } finally {
+            scheduler.stop();
+        }
+    }
+}
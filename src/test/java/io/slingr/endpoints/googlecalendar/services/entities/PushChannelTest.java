@@ -0,0 +1,56 @@
+package io.slingr.endpoints.googlecalendar.services.entities;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Tests over the PushChannel class
+ */
+public class PushChannelTest {
+
+    @Test
+    public void testMatches() {
+        final PushChannel channel = new PushChannel("channel1", "resource1", "user1", "calendar@group.com", System.currentTimeMillis());
+
+        Assert.assertEquals("user1:calendar@group.com", channel.getKey());
+        Assert.assertTrue(channel.matches("channel1", "user1:calendar@group.com"));
+        Assert.assertFalse(channel.matches("channel2", "user1:calendar@group.com"));
+        Assert.assertFalse(channel.matches("channel1", "user2:calendar@group.com"));
+        Assert.assertFalse(channel.matches(null, "user1:calendar@group.com"));
+        Assert.assertFalse(channel.matches("channel1", null));
+    }
+
+    @Test
+    public void testExpiring() {
+        final long margin = TimeUnit.DAYS.toMillis(1);
+
+        final PushChannel channel = new PushChannel("channel1", "resource1", "user1", "calendar1", System.currentTimeMillis() + TimeUnit.DAYS.toMillis(7));
+        Assert.assertFalse(channel.isExpiring(margin));
+
+        final PushChannel expiring = new PushChannel("channel1", "resource1", "user1", "calendar1", System.currentTimeMillis() + TimeUnit.HOURS.toMillis(2));
+        Assert.assertTrue(expiring.isExpiring(margin));
+    }
+
+    @Test
+    public void testJson() {
+        final PushChannel channel = new PushChannel("channel1", "resource1", "user1", "calendar1", 1000L);
+
+        final Json json = channel.toJson();
+        Assert.assertEquals("user1:calendar1", json.string(PushChannel.KEY));
+
+        final PushChannel restored = PushChannel.fromJson(json);
+        Assert.assertNotNull(restored);
+        Assert.assertEquals(channel.getKey(), restored.getKey());
+        Assert.assertEquals("channel1", restored.getChannelId());
+        Assert.assertEquals("resource1", restored.getResourceId());
+        Assert.assertEquals("user1", restored.getUserId());
+        Assert.assertEquals("calendar1", restored.getCalendarId());
+        Assert.assertEquals(1000L, restored.getExpiration());
+
+        Assert.assertNull(PushChannel.fromJson(null));
+        Assert.assertNull(PushChannel.fromJson(Json.map()));
+    }
+}
@@ -0,0 +1,71 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Tests over the CircuitBreaker class
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpen() {
+        final CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.tryAcquire());
+
+        breaker.recordFailure();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertTrue(breaker.isOpen());
+        Assert.assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        final CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(1, breaker.getFailures());
+    }
+
+    @Test
+    public void testProbe() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(1, 100);
+        breaker.recordFailure();
+        Assert.assertFalse(breaker.tryAcquire());
+
+        Thread.sleep(150);
+
+        // only one probe is allowed
+        Assert.assertTrue(breaker.tryAcquire());
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assert.assertFalse(breaker.tryAcquire());
+
+        // the probe failed, the circuit is opened for twice the time
+        breaker.recordFailure();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertTrue(breaker.getRemainingOpenTime() > 100);
+
+        Thread.sleep(250);
+        Assert.assertTrue(breaker.tryAcquire());
+        breaker.recordSuccess();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void testReleasedProbe() throws Exception {
+        final CircuitBreaker breaker = new CircuitBreaker(1, 100);
+        breaker.recordFailure();
+        Thread.sleep(150);
+        Assert.assertTrue(breaker.tryAcquire());
+
+        // the probe was not sent, other request can be the probe
+        breaker.release();
+        Assert.assertTrue(breaker.tryAcquire());
+    }
+}
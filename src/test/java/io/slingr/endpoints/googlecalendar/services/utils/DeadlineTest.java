@@ -0,0 +1,82 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import io.slingr.endpoints.exceptions.EndpointException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Tests over the Deadline class
+ */
+public class DeadlineTest {
+
+    @Test
+    public void testCurrentDeadline() {
+        Assert.assertNull(Deadline.current());
+
+        final Deadline outer = Deadline.after(10000);
+        final Deadline inner = Deadline.after(5000);
+        Deadline.run(outer, () -> {
+            Assert.assertSame(outer, Deadline.current());
+            final Deadline result = Deadline.call(inner, Deadline::current);
+            Assert.assertSame(inner, result);
+
+            // the previous deadline is restored when the inner operation finishes
+            Assert.assertSame(outer, Deadline.current());
+        });
+        Assert.assertNull(Deadline.current());
+    }
+
+    @Test
+    public void testFailedOperation() {
+        try {
+            Deadline.run(Deadline.after(0), () -> Deadline.check("sending a request"));
+            Assert.fail("The deadline is over");
+        } catch (EndpointException ex) {
+            // expected
+        }
+
+        // the next operation on the same thread does not inherit the expired deadline
+        Assert.assertNull(Deadline.current());
+        Assert.assertFalse(Deadline.expired());
+    }
+
+    @Test
+    public void testRemainingTime() {
+        Assert.assertEquals(1000, Deadline.remainingTime(1000));
+        Deadline.run(Deadline.after(500), () -> {
+            final long remaining = Deadline.remainingTime(1000);
+            Assert.assertTrue(remaining > 0);
+            Assert.assertTrue(remaining <= 500);
+        });
+    }
+
+    @Test
+    public void testExpiredDeadline() {
+        Deadline.check("a request without deadline");
+        Deadline.run(Deadline.after(0), () -> {
+            Assert.assertTrue(Deadline.expired());
+            Assert.assertEquals(0, Deadline.remainingTime(1000));
+            try {
+                Deadline.check("a request");
+                Assert.fail("The deadline is over");
+            } catch (EndpointException ex) {
+                Assert.assertTrue(ex.getMessage().contains("a request"));
+            }
+        });
+        Assert.assertFalse(Deadline.expired());
+    }
+
+    @Test
+    public void testRetryBudget() {
+        final Deadline deadline = Deadline.after(10000, 2);
+        Assert.assertTrue(deadline.tryRetry(10));
+        Assert.assertTrue(deadline.tryRetry(10));
+        Assert.assertFalse(deadline.tryRetry(10));
+        Assert.assertEquals(0, deadline.getRetryBudget());
+
+        // a retry that would start after the deadline is not done
+        final Deadline shortDeadline = Deadline.after(100, 5);
+        Assert.assertFalse(shortDeadline.tryRetry(1000));
+        Assert.assertEquals(5, shortDeadline.getRetryBudget());
+    }
+}
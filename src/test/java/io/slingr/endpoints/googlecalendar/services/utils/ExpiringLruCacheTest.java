@@ -0,0 +1,52 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Tests over the ExpiringLruCache class
+ */
+public class ExpiringLruCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        final ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2, 0);
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        // 'a' is used, so 'b' is the eldest entry
+        Assert.assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals("1", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        final ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 50);
+        cache.put("a", "1");
+        Assert.assertEquals("1", cache.get("a"));
+
+        Thread.sleep(100);
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRemove() {
+        final ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10, 0);
+        cache.put("a", "1");
+        cache.put("b", "2");
+
+        Assert.assertEquals("1", cache.remove("a"));
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("2", cache.get("b"));
+
+        cache.put("b", null);
+        Assert.assertNull(cache.get("b"));
+    }
+}
@@ -0,0 +1,137 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import com.google.api.client.googleapis.batch.BatchCallback;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import io.slingr.endpoints.exceptions.EndpointException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Tests over the RequestRateLimiter class
+ */
+public class RequestRateLimiterTest {
+
+    @Test
+    public void testUserLimit() {
+        final RequestRateLimiter limiter = new RequestRateLimiter(2, 100, 0);
+        limiter.acquire("user1");
+        limiter.acquire("user1");
+        try {
+            limiter.acquire("user1");
+            Assert.fail("The user limit was not applied");
+        } catch (EndpointException ex) {
+            // expected
+        }
+        // other users have their own budget
+        limiter.acquire("user2");
+    }
+
+    @Test
+    public void testProjectLimit() {
+        final RequestRateLimiter limiter = new RequestRateLimiter(10, 3, 0);
+        limiter.acquire("user1");
+        limiter.acquire("user2");
+        limiter.acquire("user3");
+        try {
+            limiter.acquire("user4");
+            Assert.fail("The project limit was not applied");
+        } catch (EndpointException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSeveralPermits() {
+        final RequestRateLimiter limiter = new RequestRateLimiter(10, 100, 0);
+
+        // the operations of a batch take one permit each
+        limiter.acquire("user1", 8);
+        limiter.acquire("user1", 2);
+        try {
+            limiter.acquire("user1", 1);
+            Assert.fail("The user limit was not applied to the batch");
+        } catch (EndpointException ex) {
+            // expected
+        }
+
+        // permits rejected by the project limit are returned to the user
+        final RequestRateLimiter projectLimiter = new RequestRateLimiter(10, 5, 0);
+        try {
+            projectLimiter.acquire("user1", 6);
+            Assert.fail("The project limit was not applied to the batch");
+        } catch (EndpointException ex) {
+            // expected
+        }
+        projectLimiter.acquire("user1", 5);
+    }
+
+    @Test
+    public void testBatchRequestPermits() throws Exception {
+        final AtomicInteger permits = new AtomicInteger(0);
+        final RequestRateLimiter limiter = new RequestRateLimiter(100, 100, 0) {
+            @Override
+            public void acquire(String userId, int requested) throws EndpointException {
+                permits.addAndGet(requested);
+                super.acquire(userId, requested);
+            }
+        };
+        // the requests are counted by the interceptors before reaching the transport
+        final MockHttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() throws IOException {
+                        throw new IOException("Connection refused");
+                    }
+                };
+            }
+        };
+        final HttpRequestFactory requestFactory = transport.createRequestFactory(limiter.wrap("user1", null));
+
+        // the batch request is built like the batch of the calendar service, without initializer
+        final BatchRequest batch = new BatchRequest(transport, null);
+        final BatchCallback<Void, Void> callback = new BatchCallback<Void, Void>() {
+            @Override
+            public void onSuccess(Void result, HttpHeaders responseHeaders) {
+            }
+
+            @Override
+            public void onFailure(Void error, HttpHeaders responseHeaders) {
+            }
+        };
+        for (int i = 0; i < 5; i++) {
+            batch.queue(requestFactory.buildGetRequest(new GenericUrl("https://www.googleapis.com/calendar/v3/calendars/calendar" + i)), Void.class, Void.class, callback);
+        }
+        try {
+            batch.execute();
+            Assert.fail("The batch request is not sent");
+        } catch (IOException ex) {
+            // expected
+        }
+
+        // one permit per operation of the batch
+        Assert.assertEquals(5, permits.get());
+    }
+
+    @Test
+    public void testWait() {
+        final RequestRateLimiter limiter = new RequestRateLimiter(10, 100, 1000);
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < 12; i++) {
+            limiter.acquire("user1");
+        }
+        // two requests over the burst wait about 100 ms each
+        Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+    }
+}
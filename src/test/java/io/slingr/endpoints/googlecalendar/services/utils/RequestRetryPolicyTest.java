@@ -0,0 +1,99 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import io.slingr.endpoints.exceptions.EndpointException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * <p>Tests over the RequestRetryPolicy class
+ */
+public class RequestRetryPolicyTest {
+
+    private static HttpResponseException error(int status, String reason) {
+        final String content = reason != null ? String.format("{\"error\":{\"errors\":[{\"reason\":\"%s\"}],\"code\":%s}}", reason, status) : null;
+        return new HttpResponseException.Builder(status, null, new HttpHeaders()).setContent(content).build();
+    }
+
+    @Test
+    public void testClassify() {
+        Assert.assertEquals(RequestRetryPolicy.Failure.USER_RATE_LIMIT, RequestRetryPolicy.classify("GET", error(403, RequestRetryPolicy.REASON_USER_RATE_LIMIT)));
+        Assert.assertEquals(RequestRetryPolicy.Failure.RATE_LIMIT, RequestRetryPolicy.classify("GET", error(403, RequestRetryPolicy.REASON_RATE_LIMIT)));
+        Assert.assertEquals(RequestRetryPolicy.Failure.RATE_LIMIT, RequestRetryPolicy.classify("POST", error(429, null)));
+        Assert.assertEquals(RequestRetryPolicy.Failure.SERVER_ERROR, RequestRetryPolicy.classify("GET", error(503, null)));
+
+        // errors that are not retried
+        Assert.assertNull(RequestRetryPolicy.classify("POST", error(503, null)));
+        Assert.assertNull(RequestRetryPolicy.classify("GET", error(403, "forbidden")));
+        Assert.assertNull(RequestRetryPolicy.classify("GET", error(404, "notFound")));
+    }
+
+    @Test
+    public void testDelay() {
+        final RequestRetryPolicy policy = new RequestRetryPolicy(null, null, 5, 100, 1000);
+        for (int i = 0; i < 10; i++) {
+            final long expected = Math.min(1000, 100L << i);
+            final long delay = policy.getDelay(i);
+            Assert.assertTrue(delay >= expected / 2 && delay <= expected);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRetries() throws Exception {
+        final RequestRateLimiter limiter = new RequestRateLimiter(10, 100, 0);
+        final RequestRetryPolicy policy = new RequestRetryPolicy(limiter, null, 3, 1, 10);
+        final AbstractGoogleClientRequest<String> request = Mockito.mock(AbstractGoogleClientRequest.class);
+        Mockito.when(request.execute())
+                .thenThrow(error(429, RequestRetryPolicy.REASON_RATE_LIMIT))
+                .thenThrow(error(500, null))
+                .thenReturn("ok");
+
+        Assert.assertEquals("ok", policy.execute("user1", request));
+        Mockito.verify(request, Mockito.times(3)).execute();
+        // the limit of the project was slowed down
+        Assert.assertEquals(50, limiter.getProjectRate(), 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMaxRetries() throws Exception {
+        final RequestRetryPolicy policy = new RequestRetryPolicy(null, null, 2, 1, 10);
+        final AbstractGoogleClientRequest<String> request = Mockito.mock(AbstractGoogleClientRequest.class);
+        Mockito.when(request.execute()).thenThrow(error(503, null));
+        try {
+            policy.execute("user1", request);
+            Assert.fail("The error was not thrown");
+        } catch (HttpResponseException ex) {
+            Assert.assertEquals(503, ex.getStatusCode());
+        }
+        Mockito.verify(request, Mockito.times(3)).execute();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOpenCircuit() throws Exception {
+        final UserCircuitBreakers breakers = new UserCircuitBreakers(1, 60000);
+        final RequestRetryPolicy policy = new RequestRetryPolicy(null, breakers, 2, 1, 10);
+        final AbstractGoogleClientRequest<String> request = Mockito.mock(AbstractGoogleClientRequest.class);
+        Mockito.when(request.execute()).thenThrow(error(401, "authError"));
+        try {
+            policy.execute("user1", request);
+            Assert.fail("The error was not thrown");
+        } catch (HttpResponseException ex) {
+            Assert.assertEquals(401, ex.getStatusCode());
+        }
+
+        // the request is not sent while the circuit is open
+        try {
+            policy.execute("user1", request);
+            Assert.fail("The circuit is open");
+        } catch (EndpointException ex) {
+            // expected
+        }
+        Mockito.verify(request, Mockito.times(1)).execute();
+    }
+}
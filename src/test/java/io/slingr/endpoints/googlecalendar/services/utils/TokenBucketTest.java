@@ -0,0 +1,79 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Tests over the TokenBucket class
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void testBurst() {
+        final TokenBucket bucket = new TokenBucket(5);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, bucket.reserve(0));
+        }
+        // the burst is used, the next permit is not available right away
+        Assert.assertEquals(-1, bucket.reserve(0));
+    }
+
+    @Test
+    public void testSeveralPermits() {
+        final TokenBucket bucket = new TokenBucket(10);
+        Assert.assertEquals(0, bucket.reserve(6, 0));
+        // only four permits are left
+        Assert.assertEquals(-1, bucket.reserve(5, 0));
+        Assert.assertEquals(0, bucket.reserve(4, 0));
+
+        // more permits than the burst wait for the missing ones
+        final long wait = bucket.reserve(20, TimeUnit.SECONDS.toNanos(3));
+        Assert.assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(1900) && wait <= TimeUnit.SECONDS.toNanos(2));
+
+        bucket.release(30);
+        Assert.assertEquals(0, bucket.reserve(10, 0));
+    }
+
+    @Test
+    public void testReservations() {
+        final TokenBucket bucket = new TokenBucket(10);
+        for (int i = 0; i < 10; i++) {
+            bucket.reserve(0);
+        }
+        final long maxWait = TimeUnit.SECONDS.toNanos(1);
+        final long first = bucket.reserve(maxWait);
+        final long second = bucket.reserve(maxWait);
+        Assert.assertTrue(first > 0 && first <= TimeUnit.MILLISECONDS.toNanos(100));
+        // reserved permits are taken in order
+        Assert.assertTrue(second > first);
+
+        // released permits are available again
+        bucket.release();
+        bucket.release();
+        Assert.assertTrue(bucket.reserve(maxWait) <= first);
+    }
+
+    @Test
+    public void testRate() {
+        final TokenBucket bucket = new TokenBucket(10);
+        bucket.setRate(2);
+        Assert.assertEquals(2, bucket.getRate(), 0);
+        Assert.assertEquals(0, bucket.reserve(0));
+        Assert.assertEquals(0, bucket.reserve(0));
+        Assert.assertEquals(-1, bucket.reserve(0));
+    }
+
+    @Test
+    public void testSlowDown() {
+        final TokenBucket bucket = new TokenBucket(10);
+        bucket.slowDown();
+        Assert.assertEquals(5, bucket.getRate(), 0);
+        for (int i = 0; i < 5; i++) {
+            bucket.slowDown();
+        }
+        // the rate is never lower than a fraction of the configured rate
+        Assert.assertEquals(10 * TokenBucket.MIN_RATE_FACTOR, bucket.getRate(), 0.0001);
+    }
+}
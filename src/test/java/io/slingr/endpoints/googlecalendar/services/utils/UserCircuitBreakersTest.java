@@ -0,0 +1,53 @@
+package io.slingr.endpoints.googlecalendar.services.utils;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import io.slingr.endpoints.exceptions.EndpointException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>Tests over the UserCircuitBreakers class
+ */
+public class UserCircuitBreakersTest {
+
+    private static HttpResponseException error(int status) {
+        return new HttpResponseException.Builder(status, null, new HttpHeaders()).build();
+    }
+
+    @Test
+    public void testUserFailures() {
+        final UserCircuitBreakers breakers = new UserCircuitBreakers(2, 60000);
+        breakers.recordFailure("user1", error(401));
+        breakers.recordFailure("user1", error(503));
+        Assert.assertTrue(breakers.isOpen("user1"));
+        Assert.assertFalse(breakers.isOpen("user2"));
+        Assert.assertEquals(1, breakers.getOpenCircuits());
+
+        try {
+            breakers.check("user1");
+            Assert.fail("The circuit of the user is open");
+        } catch (EndpointException ex) {
+            // expected
+        }
+        breakers.check("user2");
+
+        breakers.reset("user1");
+        Assert.assertFalse(breakers.isOpen("user1"));
+    }
+
+    @Test
+    public void testErrorsOfRequests() {
+        final UserCircuitBreakers breakers = new UserCircuitBreakers(2, 60000);
+        breakers.recordFailure("user1", error(503));
+        // a not found means that Google processed the request
+        breakers.recordFailure("user1", error(404));
+        breakers.recordFailure("user1", error(503));
+        Assert.assertFalse(breakers.isOpen("user1"));
+
+        Assert.assertTrue(UserCircuitBreakers.isFailure(error(401)));
+        Assert.assertTrue(UserCircuitBreakers.isFailure(error(500)));
+        Assert.assertFalse(UserCircuitBreakers.isFailure(error(400)));
+        Assert.assertFalse(UserCircuitBreakers.isFailure(error(403)));
+    }
+}
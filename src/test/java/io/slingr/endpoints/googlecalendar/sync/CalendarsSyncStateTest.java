@@ -0,0 +1,215 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * <p>Tests over the CalendarsSyncState class
+ */
+public class CalendarsSyncStateTest {
+
+    private static Json storedDocument() {
+        return Json.map()
+                .set(CalendarsSyncState.ID, "user1")
+                .set(CalendarsSyncState.CALENDARS, Json.map()
+                        .set("calendar1", "token1")
+                        .set("calendar2", "token2"))
+                .set(CalendarsSyncState.CHECKPOINTS, Json.map()
+                        .set("calendar2", Json.map().set("pageToken", "page2")))
+                .set(CalendarsSyncState.LAST_SYNC, 1000L);
+    }
+
+    @Test
+    public void testRestore() {
+        final CalendarsSyncState state = CalendarsSyncState.fromJson(storedDocument());
+
+        Assert.assertEquals(Long.valueOf(1000L), state.getLastSync());
+        Assert.assertEquals(2, state.getLastTokensCount());
+        Assert.assertEquals("token1", state.getLastToken("calendar1"));
+        Assert.assertNull(state.getCheckpoint("calendar1"));
+        Assert.assertEquals("page2", state.getCheckpoint("calendar2").string("pageToken"));
+
+        final CalendarsSyncState empty = CalendarsSyncState.fromJson(null);
+        Assert.assertNull(empty.getLastSync());
+        Assert.assertEquals(0, empty.getLastTokensCount());
+    }
+
+    @Test
+    public void testAllCalendarsSynchronized() {
+        final CalendarsSyncState state = CalendarsSyncState.fromJson(storedDocument());
+
+        // calendar2 was removed by the user, calendar3 did not finish its first sync
+        state.setToken("calendar1", "token1b");
+        state.setToken("calendar3", null);
+        state.setCheckpoint("calendar3", Json.map().set("pageToken", "page3"));
+
+        final Json document = state.toJson("user1", true, 2000L);
+        Assert.assertEquals("user1", document.string(CalendarsSyncState.ID));
+        Assert.assertEquals(Long.valueOf(2000L), document.longInteger(CalendarsSyncState.LAST_SYNC));
+
+        final Json calendars = document.json(CalendarsSyncState.CALENDARS);
+        Assert.assertEquals(1, calendars.size());
+        Assert.assertEquals("token1b", calendars.string("calendar1"));
+
+        final Json checkpoints = document.json(CalendarsSyncState.CHECKPOINTS);
+        Assert.assertEquals(1, checkpoints.size());
+        Assert.assertEquals("page3", checkpoints.json("calendar3").string("pageToken"));
+    }
+
+    @Test
+    public void testPartialSync() {
+        final CalendarsSyncState state = CalendarsSyncState.fromJson(storedDocument());
+
+        // only calendar2 is synchronized and it finishes
+        state.setToken("calendar2", "token2b");
+        state.setCheckpoint("calendar2", null);
+
+        final Json document = state.toJson("user1", false, state.getLastSync());
+        final Json calendars = document.json(CalendarsSyncState.CALENDARS);
+        Assert.assertEquals(2, calendars.size());
+        Assert.assertEquals("token1", calendars.string("calendar1"));
+        Assert.assertEquals("token2b", calendars.string("calendar2"));
+        Assert.assertTrue(document.json(CalendarsSyncState.CHECKPOINTS).isEmpty());
+    }
+
+    @Test
+    public void testNextInterval() {
+        Assert.assertEquals(10, CalendarsSyncState.nextInterval(null, false, 10, 60));
+        Assert.assertEquals(20, CalendarsSyncState.nextInterval(10L, false, 10, 60));
+        Assert.assertEquals(40, CalendarsSyncState.nextInterval(20L, false, 10, 60));
+        Assert.assertEquals(60, CalendarsSyncState.nextInterval(40L, false, 10, 60));
+        Assert.assertEquals(60, CalendarsSyncState.nextInterval(60L, false, 10, 60));
+        Assert.assertEquals(10, CalendarsSyncState.nextInterval(60L, true, 10, 60));
+    }
+
+    @Test
+    public void testSyncDue() {
+        final CalendarsSyncState state = CalendarsSyncState.fromJson(storedDocument());
+        Assert.assertTrue(state.isSyncDue("calendar1", 0));
+
+        // without changes the next sync is delayed two cycles, with half cycle of tolerance
+        state.registerSync("calendar1", false, 0, 10, 60);
+        state.registerSync("calendar1", false, 0, 10, 60);
+        Assert.assertFalse(state.isSyncDue("calendar1", 10));
+        Assert.assertTrue(state.isSyncDue("calendar1", 15));
+
+        state.registerSync("calendar1", true, 20, 10, 60);
+        Assert.assertTrue(state.isSyncDue("calendar1", 25));
+        Assert.assertEquals(Long.valueOf(20L), state.toJson("user1", false, 0L).json(CalendarsSyncState.SCHEDULES).json("calendar1").longInteger(CalendarsSyncState.LAST_CHANGE));
+
+        // calendars with a pending checkpoint are always synchronized
+        state.registerSync("calendar2", false, 0, 10, 60);
+        Assert.assertTrue(state.isSyncDue("calendar2", 1));
+    }
+
+    @Test
+    public void testPushedSync() {
+        final CalendarsSyncState state = CalendarsSyncState.fromJson(storedDocument());
+
+        // calendars with a push channel are polled only after the fallback interval
+        state.registerPushedSync("calendar1", true, 0, 60);
+        Assert.assertFalse(state.isSyncDue("calendar1", 10));
+        Assert.assertFalse(state.isSyncDue("calendar1", 59));
+        Assert.assertTrue(state.isSyncDue("calendar1", 60));
+        Assert.assertEquals(Long.valueOf(0L), state.toJson("user1", false, 0L).json(CalendarsSyncState.SCHEDULES).json("calendar1").longInteger(CalendarsSyncState.LAST_CHANGE));
+    }
+
+    @Test
+    public void testRecoveryTime() {
+        final long now = 1000000L;
+        final CalendarsSyncState state = CalendarsSyncState.fromJson(storedDocument()
+                .set(CalendarsSyncState.SCHEDULES, Json.map()
+                        .set("calendar2", Json.map()
+                                .set(CalendarsSyncState.INTERVAL, 20L)
+                                .set(CalendarsSyncState.NEXT_SYNC, now + 15L))));
+
+        // calendars without schedule use the last sync of the user
+        Assert.assertEquals(Long.valueOf(1000L - CalendarsSyncState.RECOVERY_MARGIN), state.getRecoveryTime("calendar1"));
+        Assert.assertNull(state.getRecoveryTime("calendar3"));
+
+        // old schedules without the time of the sync use the start of its interval
+        Assert.assertEquals(Long.valueOf(now - 5L - CalendarsSyncState.RECOVERY_MARGIN), state.getRecoveryTime("calendar2"));
+
+        state.registerSync("calendar1", false, now, 10, 60);
+        Assert.assertEquals(Long.valueOf(now - CalendarsSyncState.RECOVERY_MARGIN), state.getRecoveryTime("calendar1"));
+    }
+
+    @Test
+    public void testCalendarList() {
+        final CalendarsSyncState state = CalendarsSyncState.fromJson(null);
+        Assert.assertNull(state.getCalendarListToken());
+
+        state.applyCalendarList(Json.map()
+                .set("calendars", Arrays.asList(
+                        Json.map().set("id", "user@gmail.com").set("deleted", false),
+                        Json.map().set("id", "team@group.calendar.google.com").set("deleted", false)))
+                .set("queryToken", "list1")
+                .set("fullSync", true));
+        Assert.assertEquals("list1", state.getCalendarListToken());
+        Assert.assertEquals(2, state.getCalendarIds().size());
+
+        // incremental changes are applied over the stored list
+        final CalendarsSyncState restored = CalendarsSyncState.fromJson(state.toJson("user1", true, 1000L));
+        Assert.assertEquals("list1", restored.getCalendarListToken());
+        restored.applyCalendarList(Json.map()
+                .set("calendars", Arrays.asList(
+                        Json.map().set("id", "team@group.calendar.google.com").set("deleted", true),
+                        Json.map().set("id", "other@group.calendar.google.com").set("deleted", false)))
+                .set("queryToken", "list2")
+                .set("fullSync", false));
+        Assert.assertEquals("list2", restored.getCalendarListToken());
+        Assert.assertEquals(2, restored.getCalendarIds().size());
+        Assert.assertTrue(restored.getCalendarIds().contains("user@gmail.com"));
+        Assert.assertTrue(restored.getCalendarIds().contains("other@group.calendar.google.com"));
+
+        // calendars hidden by the user are removed like the deleted ones
+        restored.applyCalendarList(Json.map()
+                .set("calendars", Arrays.asList(
+                        Json.map().set("id", "other@group.calendar.google.com").set("deleted", false).set("hidden", true),
+                        Json.map().set("id", "hidden@group.calendar.google.com").set("deleted", false).set("hidden", true)))
+                .set("queryToken", "list3")
+                .set("fullSync", false));
+        Assert.assertEquals(1, restored.getCalendarIds().size());
+        Assert.assertTrue(restored.getCalendarIds().contains("user@gmail.com"));
+    }
+
+    @Test
+    public void testSavedByOtherReplica() {
+        final long leaseTime = 120000L;
+        final Json document = storedDocument()
+                .set(CalendarsSyncState.REPLICA, "replica1")
+                .set(CalendarsSyncState.SAVED_AT, 10000L);
+        final CalendarsSyncState state = CalendarsSyncState.fromJson(document);
+        Assert.assertEquals("replica1", state.getReplica());
+
+        // the user is kept by the replica that saved it until its lease expires
+        Assert.assertTrue(state.isSavedByOtherReplica("replica2", 10000L + leaseTime - 1, leaseTime));
+        Assert.assertFalse(state.isSavedByOtherReplica("replica2", 10000L + leaseTime, leaseTime));
+        Assert.assertFalse(state.isSavedByOtherReplica("replica1", 10001L, leaseTime));
+
+        // sync information saved before the replica was kept
+        Assert.assertFalse(CalendarsSyncState.fromJson(storedDocument()).isSavedByOtherReplica("replica2", 10001L, leaseTime));
+    }
+
+    @Test
+    public void testSavedReplica() {
+        final Json document = storedDocument()
+                .set(CalendarsSyncState.REPLICA, "replica1")
+                .set(CalendarsSyncState.SAVED_AT, 10000L);
+
+        // saves of pushed calendars keep the replica that owns the user
+        final Json pushed = CalendarsSyncState.fromJson(document).toJson("user1", false, 1000L);
+        Assert.assertEquals("replica1", pushed.string(CalendarsSyncState.REPLICA));
+        Assert.assertEquals(Long.valueOf(10000L), pushed.longInteger(CalendarsSyncState.SAVED_AT));
+
+        // saves of the polling keep the user for the replica that polls it
+        final CalendarsSyncState polled = CalendarsSyncState.fromJson(document);
+        polled.setPollingReplica("replica2");
+        final Json saved = polled.toJson("user1", true, 2000L);
+        Assert.assertEquals("replica2", saved.string(CalendarsSyncState.REPLICA));
+        Assert.assertTrue(saved.longInteger(CalendarsSyncState.SAVED_AT) > 10000L);
+    }
+}
@@ -0,0 +1,46 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Tests over the ConsistentHashRing class
+ */
+public class ConsistentHashRingTest {
+
+    @Test
+    public void testDistribution() {
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("r1", "r2", "r3"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        final Map<String, Integer> counters = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            counters.merge(ring.getNode("user" + i), 1, Integer::sum);
+        }
+        Assert.assertEquals(3, counters.size());
+        for (Integer counter : counters.values()) {
+            Assert.assertTrue(counter > 500);
+        }
+    }
+
+    @Test
+    public void testNodeLeaves() {
+        final ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("r1", "r2", "r3"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        final ConsistentHashRing smallerRing = new ConsistentHashRing(Arrays.asList("r1", "r2"), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        for (int i = 0; i < 1000; i++) {
+            final String owner = ring.getNode("user" + i);
+            if (!"r3".equals(owner)) {
+                // only the keys of the removed node are moved
+                Assert.assertEquals(owner, smallerRing.getNode("user" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyRing() {
+        Assert.assertNull(new ConsistentHashRing(Collections.<String>emptyList(), 10).getNode("user"));
+    }
+}
@@ -0,0 +1,65 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Tests over the DeliveryPipeline class
+ */
+public class DeliveryPipelineTest {
+
+    @Test
+    public void testDelivery() throws Exception {
+        final DeliveryPipeline pipeline = new DeliveryPipeline(2, 2);
+        try {
+            final Future<Long> delivery = pipeline.submit(3, () -> 3L);
+            Assert.assertEquals(Long.valueOf(3L), delivery.get(1, TimeUnit.SECONDS));
+            Assert.assertEquals(0, pipeline.getQueuedPages());
+            Assert.assertEquals(0, pipeline.getQueuedEvents());
+        } finally {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        final DeliveryPipeline pipeline = new DeliveryPipeline(1, 1);
+        final CountDownLatch blockedSender = new CountDownLatch(1);
+        try {
+            // one page is being delivered and one is waiting on the queue
+            pipeline.submit(10, () -> {
+                blockedSender.await();
+                return 10L;
+            });
+            pipeline.submit(5, () -> 5L);
+
+            final AtomicBoolean submitted = new AtomicBoolean(false);
+            final Thread producer = new Thread(() -> {
+                try {
+                    pipeline.submit(1, () -> 1L);
+                    submitted.set(true);
+                } catch (InterruptedException ex) {
+                    // test finished
+                }
+            });
+            producer.start();
+
+            // the producer waits until there is space on the queue
+            Thread.sleep(200);
+            Assert.assertFalse(submitted.get());
+            Assert.assertTrue(pipeline.getQueuedEvents() >= 5);
+
+            blockedSender.countDown();
+            producer.join(1000);
+            Assert.assertTrue(submitted.get());
+        } finally {
+            blockedSender.countDown();
+            pipeline.stop();
+        }
+    }
+}
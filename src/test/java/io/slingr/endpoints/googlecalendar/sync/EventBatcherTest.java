@@ -0,0 +1,122 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Tests over the EventBatcher class
+ */
+public class EventBatcherTest {
+
+    private static Json event(String id) {
+        return Json.map().set("id", id);
+    }
+
+    @Test
+    public void testFullBatches() {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        final EventBatcher batcher = new EventBatcher(2, 60000, (userId, events) -> sent.add(userId + ":" + events.size()));
+
+        batcher.add("user1", Arrays.asList(event("e1"), event("e2"), event("e3")));
+        batcher.add("user2", Collections.singletonList(event("e4")));
+
+        Assert.assertEquals(Collections.singletonList("user1:2"), sent);
+        Assert.assertEquals(2, batcher.getPendingEvents());
+
+        // the full batch and the flushed one were sent
+        Assert.assertEquals(3, batcher.flush("user1"));
+        Assert.assertEquals(Arrays.asList("user1:2", "user1:1"), sent);
+        Assert.assertEquals(1, batcher.getPendingEvents());
+        Assert.assertEquals(0, batcher.flush("user1"));
+
+        // sent batches are not kept
+        Assert.assertEquals(1, batcher.getPendingUsers());
+        Assert.assertEquals(0, batcher.flush("user3"));
+        Assert.assertEquals(1, batcher.getPendingUsers());
+    }
+
+    @Test
+    public void testFailedFlush() {
+        final EventBatcher batcher = new EventBatcher(10, 60000, (userId, events) -> {
+            throw new IllegalStateException("Application not available");
+        });
+        batcher.add("user1", Collections.singletonList(event("e1")));
+
+        Assert.assertEquals(EventBatcher.FLUSH_FAILED, batcher.flush("user1"));
+        Assert.assertEquals(0, batcher.getPendingUsers());
+    }
+
+    @Test
+    public void testFailedFullBatch() {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        final AtomicBoolean available = new AtomicBoolean(false);
+        final EventBatcher batcher = new EventBatcher(2, 60000, (userId, events) -> {
+            if (!available.get()) {
+                throw new IllegalStateException("Application not available");
+            }
+            sent.add(userId + ":" + events.size());
+        });
+
+        // the full batch could not be sent, so the next flushes fail even if they send their changes
+        batcher.add("user1", Arrays.asList(event("e1"), event("e2"), event("e3")));
+        Assert.assertTrue(batcher.hasFailed("user1"));
+        available.set(true);
+        Assert.assertEquals(EventBatcher.FLUSH_FAILED, batcher.flush("user1"));
+        Assert.assertEquals(Collections.singletonList("user1:1"), sent);
+        Assert.assertEquals(EventBatcher.FLUSH_FAILED, batcher.flush("user1"));
+
+        // other users are not affected
+        batcher.add("user2", Collections.singletonList(event("e4")));
+        Assert.assertEquals(1, batcher.flush("user2"));
+
+        // once the sync of the user finished, its failures are forgotten
+        batcher.release("user1");
+        Assert.assertFalse(batcher.hasFailed("user1"));
+        batcher.add("user1", Collections.singletonList(event("e5")));
+        Assert.assertEquals(1, batcher.flush("user1"));
+    }
+
+    @Test
+    public void testFailedWindowBatch() throws Exception {
+        final EventBatcher batcher = new EventBatcher(100, 100, (userId, events) -> {
+            throw new IllegalStateException("Application not available");
+        });
+        batcher.start();
+        try {
+            batcher.add("user1", Collections.singletonList(event("e1")));
+            Thread.sleep(400);
+
+            // the batch closed by the time window was lost, the flush does not report success
+            Assert.assertEquals(0, batcher.getPendingEvents());
+            Assert.assertEquals(EventBatcher.FLUSH_FAILED, batcher.flush("user1"));
+        } finally {
+            batcher.stop();
+        }
+    }
+
+    @Test
+    public void testWindow() throws Exception {
+        final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        final EventBatcher batcher = new EventBatcher(100, 200, (userId, events) -> sent.add(userId + ":" + events.size()));
+        batcher.start();
+        try {
+            batcher.add("user1", Arrays.asList(event("e1"), event("e2")));
+            Assert.assertTrue(sent.isEmpty());
+
+            Thread.sleep(600);
+
+            Assert.assertEquals(Collections.singletonList("user1:2"), sent);
+            Assert.assertEquals(0, batcher.getPendingEvents());
+            Assert.assertEquals(0, batcher.getPendingUsers());
+        } finally {
+            batcher.stop();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Tests over the EventCoalescer class
+ */
+public class EventCoalescerTest {
+
+    private static Json event(String id, String updated, String status) {
+        return Json.map()
+                .set("id", id)
+                .set("calendarId", "calendar1")
+                .set("updated", updated)
+                .set("status", status);
+    }
+
+    @Test
+    public void testNewestStateOnPage() {
+        final EventCoalescer coalescer = new EventCoalescer();
+
+        final List<Json> events = coalescer.coalesce(Arrays.asList(
+                event("e1", "2020-01-01T10:00:00.000Z", "confirmed"),
+                event("e2", "2020-01-01T10:00:00.000Z", "confirmed"),
+                event("e1", "2020-01-01T11:00:00.000Z", "cancelled"),
+                event("e2", "2020-01-01T09:00:00.000Z", "tentative")
+        ));
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("e2", events.get(0).string("id"));
+        Assert.assertEquals("confirmed", events.get(0).string("status"));
+        Assert.assertEquals("e1", events.get(1).string("id"));
+        Assert.assertEquals("cancelled", events.get(1).string("status"));
+        Assert.assertEquals(2, coalescer.getDiscardedEvents());
+    }
+
+    @Test
+    public void testChangesAlreadySent() {
+        final EventCoalescer coalescer = new EventCoalescer();
+
+        Assert.assertEquals(1, coalescer.coalesce(Arrays.asList(event("e1", "2020-01-01T10:00:00.000Z", "confirmed"))).size());
+
+        // same change on a later page, like after a full sync
+        Assert.assertTrue(coalescer.coalesce(Arrays.asList(event("e1", "2020-01-01T10:00:00.000Z", "confirmed"))).isEmpty());
+
+        // newer change
+        Assert.assertEquals(1, coalescer.coalesce(Arrays.asList(event("e1", "2020-01-01T12:00:00.000Z", "cancelled"))).size());
+        Assert.assertEquals(1, coalescer.getDiscardedEvents());
+    }
+
+    @Test
+    public void testSameIdOnDifferentCalendars() {
+        final EventCoalescer coalescer = new EventCoalescer();
+
+        final List<Json> events = coalescer.coalesce(Arrays.asList(
+                event("e1", "2020-01-01T10:00:00.000Z", "confirmed"),
+                event("e1", "2020-01-01T10:00:00.000Z", "confirmed").set("calendarId", "calendar2")
+        ));
+        Assert.assertEquals(2, events.size());
+    }
+}
@@ -0,0 +1,99 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Tests over the PollingReplicas class, using several replicas on the same process that share
+ * an in-memory data store
+ */
+public class PollingReplicasTest {
+
+    private static DataStore localDataStore() {
+        final Map<String, Json> leases = new ConcurrentHashMap<>();
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.save(Mockito.any(Json.class))).thenAnswer(invocation -> {
+            final Json lease = (Json) invocation.getArguments()[0];
+            leases.put(lease.string(PollingReplicas.ID), lease);
+            return lease;
+        });
+        Mockito.when(dataStore.find()).thenAnswer(invocation -> {
+            final DataStoreResponse response = Mockito.mock(DataStoreResponse.class);
+            Mockito.when(response.getItems()).thenReturn(new ArrayList<>(leases.values()));
+            return response;
+        });
+        return dataStore;
+    }
+
+    private static int ownedUsers(PollingReplicas replicas, int users) {
+        int owned = 0;
+        for (int i = 0; i < users; i++) {
+            if (replicas.owns("user" + i)) {
+                owned++;
+            }
+        }
+        return owned;
+    }
+
+    @Test
+    public void testRebalance() throws Exception {
+        final DataStore dataStore = localDataStore();
+        final PollingReplicas replica1 = new PollingReplicas(dataStore, "replica1", 50);
+        final PollingReplicas replica2 = new PollingReplicas(dataStore, "replica2", 50);
+
+        // a single replica owns all the users
+        replica1.renew();
+        Assert.assertEquals(1, replica1.getReplicas());
+        Assert.assertEquals(100, ownedUsers(replica1, 100));
+
+        // a replica joins
+        replica2.renew();
+        replica1.renew();
+        Assert.assertEquals(2, replica1.getReplicas());
+        Assert.assertEquals(2, replica2.getReplicas());
+        final int owned1 = ownedUsers(replica1, 100);
+        final int owned2 = ownedUsers(replica2, 100);
+        Assert.assertEquals(100, owned1 + owned2);
+        Assert.assertTrue(owned1 > 0 && owned2 > 0);
+
+        // a replica leaves and its lease expires
+        replica2.stop();
+        Mockito.verify(dataStore).removeById("replica2");
+        Thread.sleep(300);
+        replica1.renew();
+        Assert.assertEquals(1, replica1.getReplicas());
+        Assert.assertEquals(100, ownedUsers(replica1, 100));
+    }
+
+    @Test
+    public void testExpiredLease() {
+        final DataStore dataStore = localDataStore();
+        dataStore.save(Json.map()
+                .set(PollingReplicas.ID, "crashed")
+                .set(PollingReplicas.EXPIRATION, System.currentTimeMillis() - 1000));
+
+        final PollingReplicas replica = new PollingReplicas(dataStore, "replica1", 1000);
+        replica.renew();
+        Assert.assertEquals(1, replica.getReplicas());
+        Assert.assertEquals(50, ownedUsers(replica, 50));
+    }
+
+    @Test
+    public void testDataStoreUnavailable() {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.save(Mockito.any(Json.class))).thenThrow(new RuntimeException("unavailable"));
+
+        // the replica keeps synchronizing its users
+        final PollingReplicas replica = new PollingReplicas(dataStore, "replica1", 1000);
+        replica.renew();
+        Assert.assertEquals(50, ownedUsers(replica, 50));
+    }
+}
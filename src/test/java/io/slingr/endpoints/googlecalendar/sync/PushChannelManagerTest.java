@@ -0,0 +1,171 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import io.slingr.endpoints.googlecalendar.services.GoogleCalendarService;
+import io.slingr.endpoints.googlecalendar.services.entities.PushChannel;
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Tests over the PushChannelManager class. The notifications of Google are simulated by sending
+ * them to a local HTTP server that stands in for the webhook of the endpoint.
+ */
+public class PushChannelManagerTest {
+
+    private static final long EXPIRATION = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(7);
+
+    private static DataStore localDataStore(PushChannel... storedChannels) {
+        final Map<String, Json> channels = new ConcurrentHashMap<>();
+        for (PushChannel channel : storedChannels) {
+            channels.put(channel.getKey(), channel.toJson());
+        }
+        return localDataStore(channels);
+    }
+
+    private static DataStore localDataStore(Map<String, Json> channels) {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.findById(Mockito.anyString())).thenAnswer(invocation -> channels.get((String) invocation.getArguments()[0]));
+        Mockito.when(dataStore.find(Mockito.any(Json.class))).thenAnswer(invocation -> {
+            final Json filter = (Json) invocation.getArguments()[0];
+            final List<Json> items = channels.values().stream()
+                    .filter(channel -> channel.string(PushChannel.USER_ID).equals(filter.string(PushChannel.USER_ID)))
+                    .collect(Collectors.toList());
+            final DataStoreResponse response = Mockito.mock(DataStoreResponse.class);
+            Mockito.when(response.getItems()).thenReturn(items);
+            return response;
+        });
+        return dataStore;
+    }
+
+    private static int sendNotification(int port, String channelId, String token, String state) throws Exception {
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/push").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("X-Goog-Channel-ID", channelId);
+        connection.setRequestProperty("X-Goog-Channel-Token", token);
+        connection.setRequestProperty("X-Goog-Resource-State", state);
+        connection.setDoOutput(true);
+        connection.getOutputStream().close();
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void testNotifications() throws Exception {
+        final PushChannel channel = new PushChannel("channel1", "resource1", "user1", "calendar1", EXPIRATION);
+        final DataStore dataStore = localDataStore(channel);
+        final PushChannelManager manager = new PushChannelManager(dataStore, "http://localhost/push");
+        final List<PushChannel> changed = new CopyOnWriteArrayList<>();
+        final List<PushChannel> removed = new CopyOnWriteArrayList<>();
+
+        // local stand-in for the webhook of the endpoint
+        final HttpServer webhook = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        webhook.createContext("/push", exchange -> {
+            final Headers headers = exchange.getRequestHeaders();
+            manager.handleNotification(headers.getFirst("X-Goog-Channel-ID"), headers.getFirst("X-Goog-Channel-Token"),
+                    headers.getFirst("X-Goog-Resource-State"), changed::add, removed::add);
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        webhook.start();
+        try {
+            final int port = webhook.getAddress().getPort();
+
+            // first notification when the channel is registered
+            Assert.assertEquals(200, sendNotification(port, "channel1", channel.getKey(), PushChannelManager.STATE_SYNC));
+            Assert.assertTrue(changed.isEmpty());
+
+            // the events of the calendar changed
+            Assert.assertEquals(200, sendNotification(port, "channel1", channel.getKey(), PushChannelManager.STATE_EXISTS));
+            Assert.assertEquals(1, changed.size());
+            Assert.assertEquals("calendar1", changed.get(0).getCalendarId());
+
+            // notifications of unknown channels are ignored
+            Assert.assertEquals(200, sendNotification(port, "channel2", channel.getKey(), PushChannelManager.STATE_EXISTS));
+            Assert.assertEquals(200, sendNotification(port, "channel1", "user2:calendar1", PushChannelManager.STATE_EXISTS));
+            Assert.assertEquals(1, changed.size());
+
+            // the calendar was removed, the channel is removed too
+            Assert.assertEquals(200, sendNotification(port, "channel1", channel.getKey(), PushChannelManager.STATE_NOT_EXISTS));
+            Assert.assertEquals(1, changed.size());
+            Assert.assertEquals(1, removed.size());
+            Mockito.verify(dataStore).removeById(channel.getKey());
+        } finally {
+            webhook.stop(0);
+        }
+    }
+
+    @Test
+    public void testChannelRenewedByOtherReplica() {
+        final PushChannel channel = new PushChannel("channel1", "resource1", "user1", "calendar1", EXPIRATION);
+        final Map<String, Json> storedChannels = new ConcurrentHashMap<>();
+        storedChannels.put(channel.getKey(), channel.toJson());
+        final PushChannelManager manager = new PushChannelManager(localDataStore(storedChannels), "http://localhost/push");
+        Assert.assertNotNull(manager.findChannel("channel1", channel.getKey()));
+
+        // other replica renewed the channel, the notifications come with the new channel id
+        final PushChannel renewed = new PushChannel("channel2", "resource2", "user1", "calendar1", EXPIRATION);
+        storedChannels.put(renewed.getKey(), renewed.toJson());
+        final PushChannel found = manager.findChannel("channel2", renewed.getKey());
+        Assert.assertNotNull(found);
+        Assert.assertEquals("resource2", found.getResourceId());
+
+        // the old channel is not valid anymore
+        Assert.assertNull(manager.findChannel("channel1", channel.getKey()));
+    }
+
+    @Test
+    public void testRemoveUserChannels() {
+        // channels registered by another replica or before a restart are only on the data store
+        final PushChannel channel1 = new PushChannel("channel1", "resource1", "user1", "calendar1", EXPIRATION);
+        final PushChannel channel2 = new PushChannel("channel2", "resource2", "user1", "calendar2", EXPIRATION);
+        final PushChannel otherUser = new PushChannel("channel3", "resource3", "user2", "calendar1", EXPIRATION);
+        final DataStore dataStore = localDataStore(channel1, channel2, otherUser);
+        final PushChannelManager manager = new PushChannelManager(dataStore, "http://localhost/push");
+        final GoogleCalendarService service = Mockito.mock(GoogleCalendarService.class);
+
+        manager.removeUserChannels("user1", service);
+
+        Mockito.verify(service).stopChannel("channel1", "resource1");
+        Mockito.verify(service).stopChannel("channel2", "resource2");
+        Mockito.verify(service, Mockito.never()).stopChannel("channel3", "resource3");
+        Mockito.verify(dataStore).removeById(channel1.getKey());
+        Mockito.verify(dataStore).removeById(channel2.getKey());
+        Mockito.verify(dataStore, Mockito.never()).removeById(otherUser.getKey());
+    }
+
+    @Test
+    public void testRemoveStaleChannels() {
+        final PushChannel channel1 = new PushChannel("channel1", "resource1", "user1", "calendar1", EXPIRATION);
+        final PushChannel channel2 = new PushChannel("channel2", "resource2", "user1", "calendar2", EXPIRATION);
+        final DataStore dataStore = localDataStore(channel1, channel2);
+        final PushChannelManager manager = new PushChannelManager(dataStore, "http://localhost/push");
+        final GoogleCalendarService service = Mockito.mock(GoogleCalendarService.class);
+        Assert.assertTrue(manager.hasValidChannel("user1", "calendar2"));
+
+        // calendar2 was removed from the calendar list of the user
+        manager.removeStaleChannels("user1", Arrays.asList("calendar1", "calendar3"), service);
+
+        Mockito.verify(service, Mockito.never()).stopChannel("channel1", "resource1");
+        Mockito.verify(service).stopChannel("channel2", "resource2");
+        Mockito.verify(dataStore).removeById(channel2.getKey());
+    }
+}
@@ -0,0 +1,125 @@
+package io.slingr.endpoints.googlecalendar.sync;
+
+import io.slingr.endpoints.services.datastores.DataStore;
+import io.slingr.endpoints.services.datastores.DataStoreResponse;
+import io.slingr.endpoints.utils.Json;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Tests over the UserIdIterator class, using an in-memory data store that returns the users
+ * page by page
+ */
+public class UserIdIteratorTest {
+
+    private static Json user(String id) {
+        return Json.map().set("_id", id);
+    }
+
+    private static List<Json> users(int count) {
+        final List<Json> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add(user("user" + i));
+        }
+        return users;
+    }
+
+    /**
+     * Data store that returns the position of the next user as offset, and keeps the offsets
+     * requested on each call
+     */
+    private static DataStore localDataStore(List<Json> users, List<String> requestedOffsets, boolean returnOffset) {
+        final DataStore dataStore = Mockito.mock(DataStore.class);
+        Mockito.when(dataStore.find(Mockito.any(Json.class))).thenAnswer(invocation -> {
+            final Json filter = (Json) invocation.getArguments()[0];
+            final String offset = filter.string("_offset");
+            requestedOffsets.add(offset);
+            final int from = offset != null ? Integer.parseInt(offset) : 0;
+            final int to = Math.min(users.size(), from + filter.integer("_size"));
+
+            final DataStoreResponse response = Mockito.mock(DataStoreResponse.class);
+            Mockito.when(response.getItems()).thenReturn(new ArrayList<>(users.subList(from, to)));
+            Mockito.when(response.getOffset()).thenReturn(returnOffset ? String.valueOf(to) : null);
+            return response;
+        });
+        return dataStore;
+    }
+
+    private static List<String> readAll(UserIdIterator iterator) {
+        final List<String> ids = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testPages() {
+        final List<String> offsets = new ArrayList<>();
+        final UserIdIterator iterator = new UserIdIterator(localDataStore(users(7), offsets, true), 3);
+
+        final List<String> ids = readAll(iterator);
+        Assert.assertEquals(7, ids.size());
+        Assert.assertEquals("user0", ids.get(0));
+        Assert.assertEquals("user6", ids.get(6));
+
+        // the offset of each page is used to request the next one, and the short last page ends the iteration
+        Assert.assertEquals(Arrays.asList(null, "3", "6"), offsets);
+        Assert.assertEquals(0, iterator.getInvalidUsers());
+    }
+
+    @Test
+    public void testFullLastPage() {
+        final List<String> offsets = new ArrayList<>();
+        final UserIdIterator iterator = new UserIdIterator(localDataStore(users(6), offsets, true), 3);
+
+        Assert.assertEquals(6, readAll(iterator).size());
+
+        // an empty page ends the iteration when the last page is full
+        Assert.assertEquals(Arrays.asList(null, "3", "6"), offsets);
+        try {
+            iterator.next();
+            Assert.fail("There are no more users");
+        } catch (NoSuchElementException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBlankOffset() {
+        final List<String> offsets = new ArrayList<>();
+        final UserIdIterator iterator = new UserIdIterator(localDataStore(users(6), offsets, false), 3);
+
+        // without offset the next page can not be requested
+        Assert.assertEquals(Arrays.asList("user0", "user1", "user2"), readAll(iterator));
+        Assert.assertEquals(Collections.singletonList(null), offsets);
+    }
+
+    @Test
+    public void testInvalidUsers() {
+        final List<String> offsets = new ArrayList<>();
+        final List<Json> users = Arrays.asList(user("user0"), Json.map(), user(" "), null, user("user4"));
+        final UserIdIterator iterator = new UserIdIterator(localDataStore(users, offsets, true), 2);
+
+        // users without id are skipped and pages with only invalid users do not end the iteration
+        Assert.assertEquals(Arrays.asList("user0", "user4"), readAll(iterator));
+        Assert.assertEquals(3, iterator.getInvalidUsers());
+        Assert.assertEquals(Arrays.asList(null, "2", "4"), offsets);
+    }
+
+    @Test
+    public void testNoUsers() {
+        final List<String> offsets = new ArrayList<>();
+        final UserIdIterator iterator = new UserIdIterator(localDataStore(Collections.emptyList(), offsets, true), 3);
+
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertEquals(1, offsets.size());
+    }
+}